@@ -0,0 +1,135 @@
+package com.example.idempotency;
+
+import io.cloudevents.CloudEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends events through an EventProducer in groups whose size adapts to live producer metrics.
+ *
+ * Each group is sent asynchronously and flushed once, so the group size decides how often the
+ * producer is forced to ship partially filled batches. After every group the controller compares
+ * the observed latency (group send-to-ack time, and {@code record-queue-time-avg} plus
+ * {@code request-latency-avg}) with the latency budget. Over budget the group size is halved;
+ * comfortably under budget, while {@code batch-size-avg} is still below the configured
+ * batch.size, it grows by a quarter.
+ *
+ * The producer must be dedicated (not shared), so that flushes and metrics only cover this
+ * controller's records.
+ */
+public class AdaptiveBatchController {
+  private static final double GROW_BELOW_BUDGET_FRACTION = 0.5;
+  private static final double FULL_BATCH_FRACTION = 0.9;
+
+  private final EventProducer producer;
+  private final double latencyBudgetMs;
+  private final int minGroupSize;
+  private final int maxGroupSize;
+  private int groupSize;
+
+  private double lastGroupLatencyMs = Double.NaN;
+  private double maxGroupLatencyMs = 0;
+  private int adjustments = 0;
+
+  /**
+   * Create a controller for the given dedicated producer
+   *
+   * @param latencyBudget maximum time a record may wait from send to acknowledgement
+   */
+  public AdaptiveBatchController(EventProducer producer, Duration latencyBudget, int minGroupSize, int maxGroupSize) {
+    if (minGroupSize <= 0 || maxGroupSize < minGroupSize) {
+      throw new IllegalArgumentException("Group size bounds must satisfy 0 < min <= max");
+    }
+    if (producer.isShared()) {
+      throw new IllegalArgumentException("AdaptiveBatchController needs a dedicated EventProducer, not a shared one");
+    }
+    this.producer = producer;
+    this.latencyBudgetMs = latencyBudget.toNanos() / 1_000_000.0;
+    this.minGroupSize = minGroupSize;
+    this.maxGroupSize = maxGroupSize;
+    this.groupSize = minGroupSize;
+  }
+
+  /**
+   * Send all events in adaptively sized groups
+   *
+   * @return number of events acknowledged
+   */
+  public int sendAll(List<CloudEvent> events)
+      throws ExecutionException, InterruptedException, TimeoutException {
+    int sent = 0;
+    int index = 0;
+
+    while (index < events.size()) {
+      int end = Math.min(events.size(), index + groupSize);
+
+      long start = System.nanoTime();
+      sent += producer.sendBatch(events.subList(index, end));
+      double groupLatencyMs = (System.nanoTime() - start) / 1_000_000.0;
+
+      adjust(groupLatencyMs);
+      index = end;
+    }
+
+    return sent;
+  }
+
+  /**
+   * Adjust the group size from the last group's latency and the producer's batching metrics
+   */
+  private void adjust(double groupLatencyMs) {
+    lastGroupLatencyMs = groupLatencyMs;
+    maxGroupLatencyMs = Math.max(maxGroupLatencyMs, groupLatencyMs);
+
+    // Average time a record spends in the accumulator plus on the wire
+    double recordLatencyMs = producer.getMetric("record-queue-time-avg") + producer.getMetric("request-latency-avg");
+    double batchSizeAvg = producer.getMetric("batch-size-avg");
+
+    boolean overBudget = groupLatencyMs > latencyBudgetMs
+        || (!Double.isNaN(recordLatencyMs) && recordLatencyMs > latencyBudgetMs);
+    boolean batchesFull = !Double.isNaN(batchSizeAvg)
+        && batchSizeAvg >= producer.getBatchSize() * FULL_BATCH_FRACTION;
+
+    int previous = groupSize;
+    if (overBudget) {
+      groupSize = Math.max(minGroupSize, groupSize / 2);
+    } else if (groupLatencyMs < latencyBudgetMs * GROW_BELOW_BUDGET_FRACTION && !batchesFull) {
+      groupSize = Math.min(maxGroupSize, groupSize + Math.max(1, groupSize / 4));
+    }
+
+    if (groupSize != previous) {
+      adjustments++;
+    }
+  }
+
+  /**
+   * Get the current group size
+   */
+  public int getGroupSize() {
+    return groupSize;
+  }
+
+  /**
+   * Get the largest send-to-ack latency observed for a group
+   */
+  public double getMaxGroupLatencyMs() {
+    return maxGroupLatencyMs;
+  }
+
+  /**
+   * Print the controller state with the producer metrics it is driven by
+   */
+  public void printStats() {
+    System.out.println("Adaptive Batching:");
+    System.out.printf("  latency budget: %.1f ms%n", latencyBudgetMs);
+    System.out.println("  group size: " + groupSize + " (bounds " + minGroupSize + "-" + maxGroupSize + ")");
+    System.out.println("  adjustments: " + adjustments);
+    System.out.printf("  last group latency: %.1f ms, max: %.1f ms%n", lastGroupLatencyMs, maxGroupLatencyMs);
+    System.out.printf("  batch-size-avg: %.0f bytes%n", producer.getMetric("batch-size-avg"));
+    System.out.printf("  record-queue-time-avg: %.1f ms%n", producer.getMetric("record-queue-time-avg"));
+    System.out.printf("  request-latency-avg: %.1f ms%n", producer.getMetric("request-latency-avg"));
+  }
+}
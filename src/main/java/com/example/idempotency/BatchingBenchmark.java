@@ -0,0 +1,158 @@
+package com.example.idempotency;
+
+import io.cloudevents.CloudEvent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark comparing fixed producer batching against the adaptive controller under bursty load.
+ * Every scenario uses its own dedicated producer, so metrics and flushes don't carry over, and
+ * latency is measured the same way for all of them: per record, from send to acknowledgement.
+ */
+public class BatchingBenchmark {
+  private static final int BURSTS = 20;
+  private static final int MIN_BURST_SIZE = 200;
+  private static final int MAX_BURST_SIZE = 5000;
+  private static final long IDLE_BETWEEN_BURSTS_MS = 200;
+  private static final int MIN_GROUP_SIZE = 100;
+  private static final Duration LATENCY_BUDGET = Duration.ofMillis(250);
+  private static final long SEED = 42;
+
+  public static void main(String[] args) throws Exception {
+    System.out.println("=================================================");
+    System.out.println("Producer Batching Benchmark");
+    System.out.println("=================================================");
+    System.out.println("Bursts: " + BURSTS + " of " + MIN_BURST_SIZE + "-" + MAX_BURST_SIZE
+                           + " events, " + IDLE_BETWEEN_BURSTS_MS + " ms apart");
+    System.out.println("Latency Budget: " + LATENCY_BUDGET.toMillis() + " ms");
+
+    List<List<CloudEvent>> bursts = generateBursts();
+
+    List<Result> results = new ArrayList<>();
+    results.add(runFixed("Fixed, default settings", ConfluentConfig.ProducerTuning.DEFAULT, bursts));
+    results.add(runFixed("Fixed, throughput settings", ConfluentConfig.ProducerTuning.THROUGHPUT, bursts));
+    results.add(runAdaptive("Adaptive, throughput settings", bursts));
+
+    System.out.println("\n=== RESULTS ===");
+    System.out.printf("%-32s %10s %12s %14s %12s %12s %12s%n",
+                      "Scenario", "Events", "Send Time", "Events/s", "p50 Lat.", "p99 Lat.", "Max Lat.");
+    for (Result result : results) {
+      System.out.printf("%-32s %10d %10d ms %14.0f %9.1f ms %9.1f ms %9.1f ms%n", result.name(), result.events(),
+                        result.sendMillis(), result.events() * 1000.0 / Math.max(1, result.sendMillis()),
+                        result.latencies().percentileMs(50), result.latencies().percentileMs(99),
+                        result.latencies().percentileMs(100));
+    }
+  }
+
+  /**
+   * Send each burst as-is, leaving batching to the producer's batch.size and linger.ms
+   */
+  private static Result runFixed(String name, ConfluentConfig.ProducerTuning tuning,
+                                 List<List<CloudEvent>> bursts) throws Exception {
+    System.out.println("\n=== " + name.toUpperCase() + " ===");
+
+    try (EventProducer producer = new EventProducer(true, ConfluentConfig.KeyMode.STRING, tuning, false)) {
+      LatencyRecorder latencies = new LatencyRecorder();
+      producer.setAckLatencyListener(latencies::record);
+
+      int sent = 0;
+      long sendNanos = 0;
+
+      for (List<CloudEvent> burst : bursts) {
+        long start = System.nanoTime();
+        sent += producer.sendAll(burst);
+        sendNanos += System.nanoTime() - start;
+
+        Thread.sleep(IDLE_BETWEEN_BURSTS_MS);
+      }
+
+      System.out.printf("batch-size-avg: %.0f bytes, record-queue-time-avg: %.1f ms, request-latency-avg: %.1f ms%n",
+                        producer.getMetric("batch-size-avg"), producer.getMetric("record-queue-time-avg"),
+                        producer.getMetric("request-latency-avg"));
+      return new Result(name, sent, sendNanos / 1_000_000, latencies);
+    }
+  }
+
+  /**
+   * Send each burst through the adaptive controller
+   */
+  private static Result runAdaptive(String name, List<List<CloudEvent>> bursts) throws Exception {
+    System.out.println("\n=== " + name.toUpperCase() + " ===");
+
+    try (EventProducer producer = new EventProducer(
+        true, ConfluentConfig.KeyMode.STRING, ConfluentConfig.ProducerTuning.THROUGHPUT, false)) {
+      LatencyRecorder latencies = new LatencyRecorder();
+      producer.setAckLatencyListener(latencies::record);
+      AdaptiveBatchController controller =
+          new AdaptiveBatchController(producer, LATENCY_BUDGET, MIN_GROUP_SIZE, MAX_BURST_SIZE);
+
+      int sent = 0;
+      long sendNanos = 0;
+
+      for (List<CloudEvent> burst : bursts) {
+        long start = System.nanoTime();
+        sent += controller.sendAll(burst);
+        sendNanos += System.nanoTime() - start;
+
+        Thread.sleep(IDLE_BETWEEN_BURSTS_MS);
+      }
+
+      controller.printStats();
+      return new Result(name, sent, sendNanos / 1_000_000, latencies);
+    }
+  }
+
+  /**
+   * Generate the same bursty workload for every scenario
+   */
+  private static List<List<CloudEvent>> generateBursts() {
+    Random random = new Random(SEED);
+    List<List<CloudEvent>> bursts = new ArrayList<>(BURSTS);
+
+    for (int i = 0; i < BURSTS; i++) {
+      int size = MIN_BURST_SIZE + random.nextInt(MAX_BURST_SIZE - MIN_BURST_SIZE + 1);
+      List<CloudEvent> burst = new ArrayList<>(size);
+      for (Customer customer : CustomerDataProvider.createCustomerList(size)) {
+        burst.add(CloudEventUtil.createCustomerEvent(CloudEventUtil.EVENT_TYPE_CREATED, customer));
+      }
+      bursts.add(burst);
+    }
+
+    return bursts;
+  }
+
+  private record Result(String name, int events, long sendMillis, LatencyRecorder latencies) {
+  }
+
+  /**
+   * Collects per-record send-to-ack latencies, recorded from the producer's I/O thread
+   */
+  private static class LatencyRecorder {
+    private long[] nanos = new long[1024];
+    private int size = 0;
+
+    synchronized void record(long latencyNanos) {
+      if (size == nanos.length) {
+        nanos = Arrays.copyOf(nanos, size * 2);
+      }
+      nanos[size++] = latencyNanos;
+    }
+
+    /**
+     * Get the given percentile in milliseconds, using the nearest-rank method; 100 is the maximum
+     */
+    synchronized double percentileMs(double percentile) {
+      if (size == 0) {
+        return Double.NaN;
+      }
+      long[] sorted = Arrays.copyOf(nanos, size);
+      Arrays.sort(sorted);
+      int rank = (int) Math.ceil(percentile / 100.0 * size);
+      return sorted[Math.max(0, rank - 1)] / 1_000_000.0;
+    }
+  }
+}
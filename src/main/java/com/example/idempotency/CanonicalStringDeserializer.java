@@ -0,0 +1,24 @@
+package com.example.idempotency;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Deserializes low-cardinality String fields to the shared instances from {@link CustomerDictionary},
+ * so millions of deserialized customers don't each hold their own copy of "HOME" or "USA"
+ */
+public class CanonicalStringDeserializer extends StdScalarDeserializer<String> {
+  private static final long serialVersionUID = 1L;
+
+  public CanonicalStringDeserializer() {
+    super(String.class);
+  }
+
+  @Override
+  public String deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+    return CustomerDictionary.canonical(parser.getValueAsString());
+  }
+}
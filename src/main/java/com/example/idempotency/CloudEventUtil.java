@@ -57,13 +57,19 @@ public class CloudEventUtil {
     return objectMapper;
   }
 
+  /**
+   * Get the customer ID carried in the event subject
+   */
+  public static long customerId(CloudEvent event) {
+    return Long.parseLong(event.getSubject());
+  }
+
   /**
    * Convert a CloudEvent to a Customer object
    */
   public static Customer cloudEventToCustomer(CloudEvent event) {
     try {
-      String json = new String(event.getData().toBytes());
-      return objectMapper.readValue(json, Customer.class);
+      return objectMapper.readValue(event.getData().toBytes(), Customer.class);
     } catch (Exception e) {
       throw new RuntimeException("Error deserializing customer from CloudEvent", e);
     }
@@ -0,0 +1,206 @@
+package com.example.idempotency;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Flattened, memory-lean form of a {@link Customer} for holding millions of customers in memory.
+ *
+ * The id and timestamps are kept as primitives; all other fields, including the addresses, are
+ * packed into a single byte array. Names and address lines are stored as length-prefixed UTF-8,
+ * and types, state codes and countries as one-byte {@link CustomerDictionary} codes. The
+ * Customer is only materialized when {@link #toCustomer()} is called.
+ */
+public final class CompactCustomer {
+  private static final int NULL_NANOS = -1;
+
+  private final long id;
+  private final long createdSeconds;
+  private final int createdNanos;
+  private final long updatedSeconds;
+  private final int updatedNanos;
+  private final byte[] data;
+
+  private CompactCustomer(long id, Instant createdAt, Instant updatedAt, byte[] data) {
+    this.id = id;
+    this.createdSeconds = createdAt != null ? createdAt.getEpochSecond() : 0;
+    this.createdNanos = createdAt != null ? createdAt.getNano() : NULL_NANOS;
+    this.updatedSeconds = updatedAt != null ? updatedAt.getEpochSecond() : 0;
+    this.updatedNanos = updatedAt != null ? updatedAt.getNano() : NULL_NANOS;
+    this.data = data;
+  }
+
+  /**
+   * Flatten a customer
+   */
+  public static CompactCustomer of(Customer customer) {
+    if (customer == null || customer.id() == null) {
+      throw new IllegalArgumentException("Customer and customer ID cannot be null");
+    }
+
+    Encoder encoder = new Encoder();
+    encoder.writeCoded(customer.type());
+    encoder.writeString(customer.firstName());
+    encoder.writeString(customer.middleName());
+    encoder.writeString(customer.lastName());
+    encoder.writeString(customer.suffix());
+
+    List<Address> addresses = customer.addresses();
+    encoder.writeVarInt(addresses == null ? 0 : addresses.size() + 1);
+    if (addresses != null) {
+      for (Address address : addresses) {
+        encoder.writeCoded(address.type());
+        encoder.writeString(address.line1());
+        encoder.writeString(address.line2());
+        encoder.writeString(address.line3());
+        encoder.writeString(address.city());
+        encoder.writeCoded(address.state());
+        encoder.writeString(address.postalCode());
+        encoder.writeCoded(address.country());
+      }
+    }
+
+    return new CompactCustomer(customer.id(), customer.createdAt(), customer.updatedAt(), encoder.toByteArray());
+  }
+
+  /**
+   * Get the customer ID without materializing the customer
+   */
+  public long id() {
+    return id;
+  }
+
+  /**
+   * Materialize the full Customer
+   */
+  public Customer toCustomer() {
+    Decoder decoder = new Decoder(data);
+
+    Customer.CustomerBuilder builder = Customer.builder()
+        .id(id)
+        .type(decoder.readCoded())
+        .firstName(decoder.readString())
+        .middleName(decoder.readString())
+        .lastName(decoder.readString())
+        .suffix(decoder.readString())
+        .createdAt(instant(createdSeconds, createdNanos))
+        .updatedAt(instant(updatedSeconds, updatedNanos));
+
+    int addressCount = decoder.readVarInt() - 1;
+    if (addressCount >= 0) {
+      List<Address> addresses = new ArrayList<>(addressCount);
+      for (int i = 0; i < addressCount; i++) {
+        addresses.add(new Address(
+            decoder.readCoded(),
+            decoder.readString(),
+            decoder.readString(),
+            decoder.readString(),
+            decoder.readString(),
+            decoder.readCoded(),
+            decoder.readString(),
+            decoder.readCoded()
+        ));
+      }
+      builder.addresses(addresses);
+    }
+
+    return builder.build();
+  }
+
+  private static Instant instant(long seconds, int nanos) {
+    return nanos == NULL_NANOS ? null : Instant.ofEpochSecond(seconds, nanos);
+  }
+
+  /**
+   * Appends fields to a growable byte array
+   */
+  private static class Encoder {
+    private byte[] buffer = new byte[128];
+    private int size = 0;
+
+    void writeString(String value) {
+      if (value == null) {
+        writeVarInt(0);
+        return;
+      }
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarInt(bytes.length + 1);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, size, bytes.length);
+      size += bytes.length;
+    }
+
+    void writeCoded(String value) {
+      byte code = CustomerDictionary.encode(value);
+      writeByte(code);
+      if (code == CustomerDictionary.LITERAL_CODE) {
+        writeString(value);
+      }
+    }
+
+    void writeVarInt(int value) {
+      while ((value & ~0x7F) != 0) {
+        writeByte((byte) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      writeByte((byte) value);
+    }
+
+    void writeByte(byte value) {
+      ensureCapacity(1);
+      buffer[size++] = value;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, size);
+    }
+
+    private void ensureCapacity(int extra) {
+      if (size + extra > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+      }
+    }
+  }
+
+  /**
+   * Reads fields back in the order they were written
+   */
+  private static class Decoder {
+    private final byte[] data;
+    private int position = 0;
+
+    Decoder(byte[] data) {
+      this.data = data;
+    }
+
+    String readString() {
+      int length = readVarInt() - 1;
+      if (length < 0) {
+        return null;
+      }
+      String value = new String(data, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+
+    String readCoded() {
+      byte code = data[position++];
+      return code == CustomerDictionary.LITERAL_CODE ? readString() : CustomerDictionary.decode(code);
+    }
+
+    int readVarInt() {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = data[position++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+  }
+}
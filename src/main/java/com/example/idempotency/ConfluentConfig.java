@@ -4,6 +4,9 @@ import io.cloudevents.kafka.CloudEventDeserializer;
 import io.cloudevents.kafka.CloudEventSerializer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.LongDeserializer;
+import org.apache.kafka.common.serialization.LongSerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 
@@ -14,34 +17,75 @@ import java.util.UUID;
  * Configuration for Kafka producers and consumers
  */
 public class ConfluentConfig {
-  // Confluent Cloud configuration
-  public static final String BOOTSTRAP_SERVERS = "pkc-lzvrd.us-west4.gcp.confluent.cloud:9092";
-  public static final String API_KEY = "VBRXUPZD2SLR6JFK";
-  public static final String API_SECRET = "Zt4xfnUb8I3NmvL5EIjT3yl6BvYJ0Lxg12yU4XLbHVdRePURxpPeRRRfnTKNVGLN";
   public static final String TOPIC = "customer-events";
 
+  /**
+   * How the customer id is encoded as the message key
+   */
+  public enum KeyMode {
+    /** Decimal String of the customer id */
+    STRING,
+    /** Native 8-byte long; partition assignment differs from STRING */
+    LONG,
+    /**
+     * Native 8-byte long, partitioned exactly like the equivalent STRING key. Consumers read keys
+     * as raw bytes and decode either encoding, so topics still holding STRING keys can be read.
+     */
+    LONG_STRING_COMPATIBLE;
+
+    public boolean isLong() {
+      return this != STRING;
+    }
+  }
+
+  /**
+   * Producer batching settings
+   */
+  public enum ProducerTuning {
+    /** Kafka client defaults for linger.ms, batch.size, buffer.memory and compression */
+    DEFAULT,
+    /** Larger, compressed batches that trade a few milliseconds of latency for throughput */
+    THROUGHPUT
+  }
+
+  // Throughput profile settings
+  public static final int THROUGHPUT_LINGER_MS = 20;
+  public static final int THROUGHPUT_BATCH_SIZE = 128 * 1024;
+  public static final long THROUGHPUT_BUFFER_MEMORY = 64L * 1024 * 1024;
+  public static final String THROUGHPUT_COMPRESSION = "lz4";
+
+  private static ConnectionProfile profile;
+
   /**
    * Creates a producer configuration with idempotency enabled or disabled
    */
   public static Properties createProducerProps(boolean idempotentEnabled) {
+    return createProducerProps(idempotentEnabled, KeyMode.STRING);
+  }
+
+  /**
+   * Creates a producer configuration with idempotency enabled or disabled and the given key encoding
+   */
+  public static Properties createProducerProps(boolean idempotentEnabled, KeyMode keyMode) {
+    return createProducerProps(idempotentEnabled, keyMode, ProducerTuning.DEFAULT);
+  }
+
+  /**
+   * Creates a producer configuration with the given idempotency, key encoding and batching settings
+   */
+  public static Properties createProducerProps(boolean idempotentEnabled, KeyMode keyMode, ProducerTuning tuning) {
     Properties props = new Properties();
 
     // Connection properties
-    props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, BOOTSTRAP_SERVERS);
-    props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+    addConnectionProps(props);
+    props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG,
+              keyMode.isLong() ? LongSerializer.class.getName() : StringSerializer.class.getName());
     props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, CloudEventSerializer.class.getName());
 
-    // Authentication with Confluent Cloud
-    props.put("security.protocol", "SASL_SSL");
-    props.put("sasl.mechanism", "PLAIN");
-    props.put("sasl.jaas.config",
-              "org.apache.kafka.common.security.plain.PlainLoginModule required " +
-                  "username=\"" + API_KEY + "\" " +
-                  "password=\"" + API_SECRET + "\";");
-
-    // Additional Confluent Cloud specific configurations
-    props.put("client.dns.lookup", "use_all_dns_ips");
-    props.put("session.timeout.ms", "45000");
+    // Keep partition assignment identical to string-keyed data
+    if (keyMode == KeyMode.LONG_STRING_COMPATIBLE) {
+      props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, StringKeyCompatiblePartitioner.class.getName());
+    }
 
     // Idempotence setting
     props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, idempotentEnabled);
@@ -58,6 +102,14 @@ public class ConfluentConfig {
       props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 1);
     }
 
+    // Batching settings
+    if (tuning == ProducerTuning.THROUGHPUT) {
+      props.put(ProducerConfig.LINGER_MS_CONFIG, THROUGHPUT_LINGER_MS);
+      props.put(ProducerConfig.BATCH_SIZE_CONFIG, THROUGHPUT_BATCH_SIZE);
+      props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, THROUGHPUT_BUFFER_MEMORY);
+      props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, THROUGHPUT_COMPRESSION);
+    }
+
     return props;
   }
 
@@ -65,37 +117,76 @@ public class ConfluentConfig {
    * Creates a consumer configuration
    */
   public static Properties createConsumerProps() {
+    return createConsumerProps(KeyMode.STRING);
+  }
+
+  /**
+   * Creates a consumer configuration for the given key encoding; use {@link CustomerKeys} to get
+   * the customer id from any of the resulting key types
+   */
+  public static Properties createConsumerProps(KeyMode keyMode) {
     Properties props = new Properties();
-    props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, BOOTSTRAP_SERVERS);
+    addConnectionProps(props);
     props.put(ConsumerConfig.GROUP_ID_CONFIG, "demo-group-" + UUID.randomUUID());
     props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
-    props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+    props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, switch (keyMode) {
+      case STRING -> StringDeserializer.class.getName();
+      case LONG -> LongDeserializer.class.getName();
+      case LONG_STRING_COMPATIBLE -> ByteArrayDeserializer.class.getName();
+    });
     props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, CloudEventDeserializer.class.getName());
     props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, true);
 
-    // Authentication with Confluent Cloud
-    props.put("security.protocol", "SASL_SSL");
-    props.put("sasl.mechanism", "PLAIN");
-    props.put("sasl.jaas.config",
-              "org.apache.kafka.common.security.plain.PlainLoginModule required " +
-                  "username=\"" + API_KEY + "\" " +
-                  "password=\"" + API_SECRET + "\";");
+    return props;
+  }
 
-    // Additional Confluent Cloud specific configurations
-    props.put("client.dns.lookup", "use_all_dns_ips");
-    props.put("session.timeout.ms", "45000");
+  /**
+   * Creates a group-less consumer configuration for reading explicitly assigned partitions as raw bytes
+   */
+  public static Properties createAssignedConsumerProps() {
+    Properties props = new Properties();
+    addConnectionProps(props);
+    props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+    props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+    props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
 
     return props;
   }
 
+  /**
+   * Get the active connection profile, loaded on first use. A profile that fails to load is retried on
+   * the next call, and its IllegalStateException reaches every caller.
+   */
+  public static synchronized ConnectionProfile getProfile() {
+    if (profile == null) {
+      profile = ConnectionProfile.load();
+    }
+    return profile;
+  }
+
+  /**
+   * Adds the bootstrap servers, authentication and connection settings of the active profile
+   */
+  private static void addConnectionProps(Properties props) {
+    props.putAll(getProfile().toClientProps());
+  }
+
   /**
    * Print producer configuration details
    */
   public static void printProducerConfig(Properties props) {
     System.out.println("Producer Configuration:");
+    System.out.println("  profile: " + getProfile());
     System.out.println("  enable.idempotence: " + props.get(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG));
     System.out.println("  acks: " + props.get(ProducerConfig.ACKS_CONFIG));
     System.out.println("  retries: " + props.get(ProducerConfig.RETRIES_CONFIG));
     System.out.println("  max.in.flight.requests: " + props.get(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION));
+    System.out.println("  key.serializer: " + props.get(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG));
+    if (props.containsKey(ProducerConfig.LINGER_MS_CONFIG)) {
+      System.out.println("  linger.ms: " + props.get(ProducerConfig.LINGER_MS_CONFIG));
+      System.out.println("  batch.size: " + props.get(ProducerConfig.BATCH_SIZE_CONFIG));
+      System.out.println("  buffer.memory: " + props.get(ProducerConfig.BUFFER_MEMORY_CONFIG));
+      System.out.println("  compression.type: " + props.get(ProducerConfig.COMPRESSION_TYPE_CONFIG));
+    }
   }
 }
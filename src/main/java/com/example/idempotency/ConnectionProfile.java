@@ -0,0 +1,140 @@
+package com.example.idempotency;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Named Kafka connection settings loaded from properties files and environment variables.
+ *
+ * Settings are layered, later sources overriding earlier ones:
+ * <ol>
+ *   <li>the bundled {@code kafka-<profile>.properties} resource</li>
+ *   <li>an external properties file named by {@code kafka.config} / {@code KAFKA_CONFIG}</li>
+ *   <li>{@code KAFKA_BOOTSTRAP_SERVERS}, {@code KAFKA_API_KEY} and {@code KAFKA_API_SECRET}</li>
+ * </ol>
+ * The profile is chosen with {@code kafka.profile} / {@code KAFKA_PROFILE} and defaults to
+ * {@value #CLOUD_SASL}. Credentials are never bundled; {@code api.key} and {@code api.secret}
+ * are turned into the SASL PLAIN JAAS configuration.
+ */
+public class ConnectionProfile {
+  public static final String LOCAL_PLAINTEXT = "local-plaintext";
+  public static final String CLOUD_SASL = "cloud-sasl";
+
+  private static final String API_KEY = "api.key";
+  private static final String API_SECRET = "api.secret";
+
+  private final String name;
+  private final Properties settings;
+
+  private ConnectionProfile(String name, Properties settings) {
+    this.name = name;
+    this.settings = settings;
+  }
+
+  /**
+   * Load the profile selected by {@code kafka.profile} / {@code KAFKA_PROFILE}
+   */
+  public static ConnectionProfile load() {
+    String name = Settings.get("kafka.profile", "KAFKA_PROFILE");
+    return load(name != null ? name : CLOUD_SASL);
+  }
+
+  /**
+   * Load a named profile
+   */
+  public static ConnectionProfile load(String name) {
+    Properties settings = new Properties();
+
+    String resource = "/kafka-" + name + ".properties";
+    try (InputStream in = ConnectionProfile.class.getResourceAsStream(resource)) {
+      if (in == null) {
+        throw new IllegalArgumentException("Unknown Kafka connection profile: " + name);
+      }
+      settings.load(in);
+    } catch (IOException e) {
+      throw new RuntimeException("Error loading Kafka connection profile " + name, e);
+    }
+
+    String externalFile = Settings.get("kafka.config", "KAFKA_CONFIG");
+    if (externalFile != null) {
+      try (Reader reader = Files.newBufferedReader(Path.of(externalFile))) {
+        settings.load(reader);
+      } catch (IOException e) {
+        throw new RuntimeException("Error loading Kafka configuration from " + externalFile, e);
+      }
+    }
+
+    override(settings, "bootstrap.servers", System.getenv("KAFKA_BOOTSTRAP_SERVERS"));
+    override(settings, API_KEY, System.getenv("KAFKA_API_KEY"));
+    override(settings, API_SECRET, System.getenv("KAFKA_API_SECRET"));
+
+    ConnectionProfile profile = new ConnectionProfile(name, settings);
+    profile.validate();
+    return profile;
+  }
+
+  /**
+   * Kafka client properties for this profile, with credentials converted to a JAAS configuration
+   */
+  public Properties toClientProps() {
+    Properties props = new Properties();
+    for (Map.Entry<Object, Object> entry : settings.entrySet()) {
+      if (!API_KEY.equals(entry.getKey()) && !API_SECRET.equals(entry.getKey())) {
+        props.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    if (settings.containsKey(API_KEY)) {
+      props.put("sasl.jaas.config",
+                "org.apache.kafka.common.security.plain.PlainLoginModule required " +
+                    "username=\"" + settings.getProperty(API_KEY) + "\" " +
+                    "password=\"" + settings.getProperty(API_SECRET) + "\";");
+    }
+
+    return props;
+  }
+
+  /**
+   * Get the profile name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Get the bootstrap servers of this profile
+   */
+  public String getBootstrapServers() {
+    return settings.getProperty("bootstrap.servers");
+  }
+
+  private void validate() {
+    if (getBootstrapServers() == null || getBootstrapServers().isBlank()) {
+      throw new IllegalStateException("No bootstrap.servers configured for Kafka connection profile " + name);
+    }
+
+    boolean sasl = settings.getProperty("security.protocol", "").startsWith("SASL");
+    if (sasl && !settings.containsKey("sasl.jaas.config")
+        && (!settings.containsKey(API_KEY) || !settings.containsKey(API_SECRET))) {
+      throw new IllegalStateException("Kafka connection profile " + name + " requires credentials: "
+                                          + "set KAFKA_API_KEY and KAFKA_API_SECRET, or api.key and api.secret in "
+                                          + "the file named by KAFKA_CONFIG");
+    }
+  }
+
+  private static void override(Properties settings, String key, String value) {
+    if (value != null && !value.isBlank()) {
+      settings.setProperty(key, value);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name + " (" + getBootstrapServers() + ")";
+  }
+}
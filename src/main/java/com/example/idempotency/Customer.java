@@ -1,13 +1,16 @@
 package com.example.idempotency;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.Builder;
 import java.time.Instant;
 import java.util.List;
 
 @Builder
+@JsonIgnoreProperties(value = {"fullName", "primaryAddress"}, allowGetters = true)
 public record Customer(
     Long id,
-    String type,
+    @JsonDeserialize(using = CanonicalStringDeserializer.class) String type,
     String firstName,
     String middleName,
     String lastName,
@@ -57,15 +60,16 @@ public record Customer(
   }
 }
 
+@JsonIgnoreProperties(value = "formattedAddress", allowGetters = true)
 record Address(
-    String type,
+    @JsonDeserialize(using = CanonicalStringDeserializer.class) String type,
     String line1,
     String line2,
     String line3,
     String city,
-    String state,
+    @JsonDeserialize(using = CanonicalStringDeserializer.class) String state,
     String postalCode,
-    String country
+    @JsonDeserialize(using = CanonicalStringDeserializer.class) String country
 ) {
   /**
    * Returns a formatted address string
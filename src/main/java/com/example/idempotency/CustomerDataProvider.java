@@ -1,6 +1,5 @@
 package com.example.idempotency;
 
-import io.hypersistence.tsid.TSID;
 import lombok.experimental.UtilityClass;
 import net.datafaker.Faker;
 
@@ -16,9 +15,11 @@ import java.util.Random;
 public class CustomerDataProvider {
   private static final Faker faker = new Faker();
   private static final Random random = new Random();
+  // Created on first use, so a configuration error surfaces as the IllegalStateException itself
+  private static volatile TsidAllocator idAllocator;
 
-  private static final String[] ADDRESS_TYPES = {"HOME", "WORK", "MAILING", "BILLING", "SHIPPING"};
-  private static final String[] CUSTOMER_TYPES = {"INDIVIDUAL", "BUSINESS", "GOVERNMENT", "NON_PROFIT"};
+  private static final String[] ADDRESS_TYPES = CustomerDictionary.ADDRESS_TYPES;
+  private static final String[] CUSTOMER_TYPES = CustomerDictionary.CUSTOMER_TYPES;
 
   /**
    * Create a basic customer with minimum information
@@ -27,7 +28,7 @@ public class CustomerDataProvider {
     Instant now = Instant.now();
 
     return Customer.builder()
-        .id(TSID.Factory.getTsid().toLong())
+        .id(getIdAllocator().nextId())
         .type(CUSTOMER_TYPES[0])  // INDIVIDUAL
         .firstName(faker.name().firstName())
         .lastName(faker.name().lastName())
@@ -59,7 +60,7 @@ public class CustomerDataProvider {
     Instant now = Instant.now();
 
     return Customer.builder()
-        .id(TSID.Factory.getTsid().toLong())
+        .id(getIdAllocator().nextId())
         .type(randomCustomerType())
         .firstName(faker.name().firstName())
         .middleName(faker.name().firstName())
@@ -76,12 +77,30 @@ public class CustomerDataProvider {
    */
   public static List<Customer> createCustomerList(int count) {
     List<Customer> customers = new ArrayList<>(count);
-    for (int i = 0; i < count; i++) {
-      customers.add(createBasicCustomer());
+    long[] ids = getIdAllocator().allocate(count);
+    for (long id : ids) {
+      customers.add(createWithId(id));
     }
     return customers;
   }
 
+  /**
+   * Get the allocator used for customer IDs, creating it from the environment on first use
+   */
+  public static TsidAllocator getIdAllocator() {
+    TsidAllocator allocator = idAllocator;
+    if (allocator == null) {
+      synchronized (CustomerDataProvider.class) {
+        allocator = idAllocator;
+        if (allocator == null) {
+          allocator = TsidAllocator.fromEnvironment();
+          idAllocator = allocator;
+        }
+      }
+    }
+    return allocator;
+  }
+
   /**
    * Generate a list of random addresses
    */
@@ -109,9 +128,9 @@ public class CustomerDataProvider {
         random.nextBoolean() ? faker.address().secondaryAddress() : null,
         random.nextBoolean() ? faker.company().name() + " Building" : null,
         faker.address().city(),
-        faker.address().stateAbbr(),
+        CustomerDictionary.canonical(faker.address().stateAbbr()),
         faker.address().zipCode(),
-        "USA"
+        CustomerDictionary.COUNTRIES[0]
     );
   }
 
@@ -0,0 +1,77 @@
+package com.example.idempotency;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dictionary of the low-cardinality values repeated across customers: customer types, address
+ * types, state codes and countries. Used to share one String instance per value and to encode
+ * values as single-byte codes in {@link CompactCustomer}.
+ */
+@UtilityClass
+public class CustomerDictionary {
+  public static final String[] CUSTOMER_TYPES = {"INDIVIDUAL", "BUSINESS", "GOVERNMENT", "NON_PROFIT"};
+  public static final String[] ADDRESS_TYPES = {"HOME", "WORK", "MAILING", "BILLING", "SHIPPING"};
+  public static final String[] COUNTRIES = {"USA"};
+  public static final String[] STATE_CODES = {
+      "AL", "AK", "AZ", "AR", "CA", "CO", "CT", "DE", "FL", "GA", "HI", "ID", "IL", "IN", "IA", "KS",
+      "KY", "LA", "ME", "MD", "MA", "MI", "MN", "MS", "MO", "MT", "NE", "NV", "NH", "NJ", "NM", "NY",
+      "NC", "ND", "OH", "OK", "OR", "PA", "RI", "SC", "SD", "TN", "TX", "UT", "VT", "VA", "WA", "WV",
+      "WI", "WY", "DC", "AS", "GU", "MP", "PR", "VI"
+  };
+
+  /** Code for a null value */
+  public static final byte NULL_CODE = 0;
+  /** Code for a value that is not in the dictionary and is stored literally */
+  public static final byte LITERAL_CODE = (byte) 0xFF;
+
+  private static final String[] VALUES;
+  private static final Map<String, Integer> CODES = new HashMap<>();
+
+  static {
+    int size = 1 + CUSTOMER_TYPES.length + ADDRESS_TYPES.length + COUNTRIES.length + STATE_CODES.length;
+    VALUES = new String[size];
+
+    int code = 1; // 0 is reserved for null
+    for (String[] group : new String[][]{CUSTOMER_TYPES, ADDRESS_TYPES, COUNTRIES, STATE_CODES}) {
+      for (String value : group) {
+        VALUES[code] = value;
+        CODES.put(value, code++);
+      }
+    }
+  }
+
+  /**
+   * Get the shared instance of a dictionary value, or the value itself if it is not in the dictionary
+   */
+  public static String canonical(String value) {
+    if (value == null) {
+      return null;
+    }
+    Integer code = CODES.get(value);
+    return code != null ? VALUES[code] : value;
+  }
+
+  /**
+   * Encode a value as its dictionary code, {@link #NULL_CODE} or {@link #LITERAL_CODE}
+   */
+  public static byte encode(String value) {
+    if (value == null) {
+      return NULL_CODE;
+    }
+    Integer code = CODES.get(value);
+    return code != null ? (byte) (int) code : LITERAL_CODE;
+  }
+
+  /**
+   * Decode a dictionary code; {@link #LITERAL_CODE} has no dictionary value
+   */
+  public static String decode(byte code) {
+    if (code == LITERAL_CODE) {
+      throw new IllegalArgumentException("Literal values are not stored in the dictionary");
+    }
+    return VALUES[code & 0xFF];
+  }
+}
@@ -0,0 +1,98 @@
+package com.example.idempotency;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures retained heap per customer for the plain, dictionary-encoded and compact representations.
+ *
+ * Customers are deserialized from JSON, as on the consumer path, and kept reachable while the
+ * heap is measured after a full GC. Run with a fixed heap (e.g. -Xms2g -Xmx2g) for stable numbers.
+ */
+public class CustomerFootprint {
+  private static final int CUSTOMER_COUNT = 200_000;
+  private static final int TEMPLATE_COUNT = 1_000;
+  private static final int REFERENCE_SIZE = 4; // compressed oops, the default for heaps below 32 GB
+
+  public static void main(String[] args) throws Exception {
+    System.out.println("=================================================");
+    System.out.println("Customer Memory Footprint");
+    System.out.println("=================================================");
+    System.out.println("Customers Retained: " + CUSTOMER_COUNT);
+
+    // Faker is slow, so deserialize many copies of a smaller set of generated customers
+    ObjectMapper canonicalMapper = CloudEventUtil.getObjectMapper();
+    List<byte[]> templates = new ArrayList<>(TEMPLATE_COUNT);
+    for (int i = 0; i < TEMPLATE_COUNT; i++) {
+      templates.add(canonicalMapper.writeValueAsBytes(CustomerDataProvider.createFullCustomer()));
+    }
+
+    // Same mapper without annotations, so low-cardinality strings are not shared; derived
+    // properties such as fullName are then unknown and must be skipped explicitly
+    ObjectMapper plainMapper = JsonMapper.builder()
+        .addModule(new JavaTimeModule())
+        .disable(MapperFeature.USE_ANNOTATIONS)
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+        .build();
+
+    double plain = measure("Customer", templates, json -> plainMapper.readValue(json, Customer.class));
+    double canonical = measure("Customer, dictionary strings", templates,
+                               json -> canonicalMapper.readValue(json, Customer.class));
+    double compact = measure("CompactCustomer", templates,
+                             json -> CompactCustomer.of(canonicalMapper.readValue(json, Customer.class)));
+
+    System.out.println("\n=== RESULTS ===");
+    System.out.printf("%-32s %12s %10s%n", "Representation", "Bytes/Cust.", "Saving");
+    System.out.printf("%-32s %12.0f %10s%n", "Customer", plain, "-");
+    System.out.printf("%-32s %12.0f %9.1f%%%n", "Customer, dictionary strings", canonical,
+                      (1 - canonical / plain) * 100);
+    System.out.printf("%-32s %12.0f %9.1f%%%n", "CompactCustomer", compact, (1 - compact / plain) * 100);
+  }
+
+  /**
+   * Deserialize and retain CUSTOMER_COUNT customers, returning the retained heap per customer.
+   * Measured as the heap released when the customers are dropped, so garbage left over from
+   * earlier phases doesn't skew the result.
+   */
+  private static double measure(String name, List<byte[]> templates, JsonReader reader) throws Exception {
+    List<Object> retained = new ArrayList<>(CUSTOMER_COUNT);
+    for (int i = 0; i < CUSTOMER_COUNT; i++) {
+      retained.add(reader.read(templates.get(i % templates.size())));
+    }
+
+    long withCustomers = usedHeapAfterGc();
+    // Keep the customers reachable until measured; the JIT may otherwise treat them as dead
+    Reference.reachabilityFence(retained);
+    retained = null;
+    long withoutCustomers = usedHeapAfterGc();
+
+    // Exclude the list's own backing array from the per-customer figure
+    double perCustomer = (withCustomers - withoutCustomers - (double) CUSTOMER_COUNT * REFERENCE_SIZE) / CUSTOMER_COUNT;
+
+    System.out.printf("%s: %.0f bytes per customer%n", name, perCustomer);
+    return perCustomer;
+  }
+
+  private static long usedHeapAfterGc() throws InterruptedException {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  @FunctionalInterface
+  private interface JsonReader {
+    Object read(byte[] json) throws Exception;
+  }
+}
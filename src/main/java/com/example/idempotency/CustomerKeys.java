@@ -0,0 +1,77 @@
+package com.example.idempotency;
+
+import lombok.experimental.UtilityClass;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes message keys written in any {@link ConfluentConfig.KeyMode} back to the customer id,
+ * so topics holding both decimal String keys and native long keys can be read during a migration
+ */
+@UtilityClass
+public class CustomerKeys {
+  private static final int MAX_DECIMAL_DIGITS = 19;
+
+  /**
+   * Get the customer id of a deserialized key: a Long, a decimal String or raw key bytes
+   */
+  public static long toCustomerId(Object key) {
+    if (key instanceof Long id) {
+      return id;
+    }
+    if (key instanceof String id) {
+      return Long.parseLong(id);
+    }
+    if (key instanceof byte[] bytes) {
+      return decode(bytes);
+    }
+    throw new IllegalArgumentException("Unsupported key type: " + (key == null ? "null" : key.getClass().getName()));
+  }
+
+  /**
+   * Decode raw key bytes by length and content: eight bytes that are not all decimal digits are a
+   * native long, anything else is a decimal String. A binary TSID only consists of ASCII digits
+   * once its timestamp passes 2046, so current ids are never mistaken for a String.
+   */
+  public static long decode(byte[] key) {
+    if (key.length == Long.BYTES && !isDecimal(key)) {
+      return ByteBuffer.wrap(key).getLong();
+    }
+    return parseDecimal(key);
+  }
+
+  /**
+   * Parse decimal ASCII digits with an optional leading minus, without creating a String.
+   * Like {@link Long#parseLong}, a value outside the long range is rejected.
+   */
+  static long parseDecimal(byte[] key) {
+    if (!isDecimal(key)) {
+      throw new NumberFormatException("Not a numeric key");
+    }
+
+    // Accumulate negatively so Long.MIN_VALUE is representable
+    boolean negative = key[0] == '-';
+    long value = 0;
+    try {
+      for (int i = negative ? 1 : 0; i < key.length; i++) {
+        value = Math.subtractExact(Math.multiplyExact(value, 10), key[i] - '0');
+      }
+      return negative ? value : Math.negateExact(value);
+    } catch (ArithmeticException e) {
+      throw new NumberFormatException("Numeric key out of range");
+    }
+  }
+
+  private static boolean isDecimal(byte[] key) {
+    int start = key.length > 0 && key[0] == '-' ? 1 : 0;
+    if (key.length == start || key.length - start > MAX_DECIMAL_DIGITS) {
+      return false;
+    }
+    for (int i = start; i < key.length; i++) {
+      if (key[i] < '0' || key[i] > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
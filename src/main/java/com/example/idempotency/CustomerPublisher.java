@@ -0,0 +1,423 @@
+package com.example.idempotency;
+
+import io.cloudevents.CloudEvent;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Backpressured stream of customers from the events topic.
+ *
+ * Records are only fetched while the subscriber has outstanding demand: once demand is used up
+ * the assigned partitions are paused, and they are resumed when more is requested. The consumer
+ * keeps polling while paused so it stays in the group, and at most one poll's worth of records
+ * ({@code max.poll.records}) is ever buffered. Offsets are committed only for delivered records, so a
+ * publisher created with the same consumer group id resumes after the last delivered record; without
+ * a group id every subscription uses a fresh group and reads from the earliest offset.
+ *
+ * Subscriber signals come from a dedicated delivery thread fed by the buffer, so a slow
+ * subscriber never holds up the polling thread or risks exceeding {@code max.poll.interval.ms}.
+ */
+public class CustomerPublisher implements Flow.Publisher<Customer>, AutoCloseable {
+  private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+  private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(5);
+  private static final int DEFAULT_MAX_BUFFERED = 500;
+
+  private final String groupId;
+  private final ConfluentConfig.KeyMode keyMode;
+  private final int maxBuffered;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+  private volatile KafkaSubscription subscription;
+
+  /**
+   * Create a publisher for the events topic
+   */
+  public CustomerPublisher() {
+    this(ConfluentConfig.KeyMode.STRING, DEFAULT_MAX_BUFFERED);
+  }
+
+  /**
+   * Create a publisher with the given key encoding and maximum number of buffered records
+   */
+  public CustomerPublisher(ConfluentConfig.KeyMode keyMode, int maxBuffered) {
+    this(null, keyMode, maxBuffered);
+  }
+
+  /**
+   * Create a publisher that consumes as the given consumer group, resuming from its committed
+   * offsets; a null group id uses a fresh group
+   */
+  public CustomerPublisher(String groupId, ConfluentConfig.KeyMode keyMode, int maxBuffered) {
+    if (maxBuffered <= 0) {
+      throw new IllegalArgumentException("maxBuffered must be positive");
+    }
+    this.groupId = groupId;
+    this.keyMode = keyMode;
+    this.maxBuffered = maxBuffered;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super Customer> subscriber) {
+    Objects.requireNonNull(subscriber, "subscriber");
+
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onError(new IllegalStateException("CustomerPublisher supports a single subscriber"));
+      return;
+    }
+
+    Properties props = ConfluentConfig.createConsumerProps(keyMode);
+    if (groupId != null) {
+      props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+    }
+    props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+    props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxBuffered);
+
+    KafkaSubscription kafkaSubscription = new KafkaSubscription(subscriber, new KafkaConsumer<>(props));
+    this.subscription = kafkaSubscription;
+
+    subscriber.onSubscribe(kafkaSubscription);
+    kafkaSubscription.start();
+  }
+
+  /**
+   * Complete the stream and close the underlying consumer, waiting for the final signal to be delivered
+   */
+  @Override
+  public void close() {
+    KafkaSubscription current = subscription;
+    if (current != null) {
+      current.complete();
+      try {
+        current.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Subscription driving a polling thread that fills the buffer and a delivery thread that drains
+   * it; all subscriber signals come from the delivery thread
+   */
+  private static class KafkaSubscription implements Flow.Subscription, Runnable {
+    private final Flow.Subscriber<? super Customer> subscriber;
+    private final KafkaConsumer<Object, CloudEvent> consumer;
+    private final Thread pollThread;
+    private final ExecutorService deliveryExecutor;
+    private volatile Thread deliveryThread;
+
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger deliveryRequests = new AtomicInteger();
+    private volatile boolean cancelled = false;
+    private volatile boolean completed = false;
+    private volatile Throwable pendingError;
+    private volatile boolean finished = false;
+
+    // Guarded by buffer: records move to the subscriber and their offsets to delivered atomically,
+    // so a rebalance sees every taken record as delivered
+    private final ArrayDeque<ConsumerRecord<Object, CloudEvent>> buffer = new ArrayDeque<>();
+    private boolean stopped = false;
+
+    private final Map<TopicPartition, OffsetAndMetadata> delivered = new ConcurrentHashMap<>();
+    private final AtomicBoolean uncommitted = new AtomicBoolean();
+
+    // Only touched by the delivery thread
+    private boolean terminated = false;
+
+    // Only touched by the polling thread
+    private boolean paused = false;
+
+    KafkaSubscription(Flow.Subscriber<? super Customer> subscriber, KafkaConsumer<Object, CloudEvent> consumer) {
+      this.subscriber = subscriber;
+      this.consumer = consumer;
+      this.pollThread = new Thread(this, "customer-publisher");
+      this.pollThread.setDaemon(true);
+      this.deliveryExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "customer-publisher-delivery");
+        thread.setDaemon(true);
+        deliveryThread = thread;
+        return thread;
+      });
+    }
+
+    void start() {
+      pollThread.start();
+    }
+
+    void join() throws InterruptedException {
+      pollThread.join();
+      // The final signal may be in flight; when closed from a subscriber callback it is sent on return
+      if (Thread.currentThread() != deliveryThread) {
+        deliveryExecutor.awaitTermination(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+      }
+    }
+
+    void complete() {
+      completed = true;
+      consumer.wakeup();
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        pendingError = new IllegalArgumentException("Requested demand must be positive, was " + n);
+        consumer.wakeup();
+        return;
+      }
+
+      long previous = demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+      if (previous == 0) {
+        scheduleDelivery();
+        // Interrupt a poll on paused partitions so they are resumed right away
+        consumer.wakeup();
+      }
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      consumer.wakeup();
+    }
+
+    /**
+     * Polling loop: never calls the subscriber, so its pace is independent of the subscriber's
+     */
+    @Override
+    public void run() {
+      try {
+        consumer.subscribe(Collections.singletonList(ConfluentConfig.TOPIC), new PauseOnAssign());
+
+        while (!cancelled && !completed && pendingError == null) {
+          updatePause();
+
+          try {
+            ConsumerRecords<Object, CloudEvent> records = consumer.poll(POLL_TIMEOUT);
+            if (!records.isEmpty()) {
+              synchronized (buffer) {
+                records.forEach(buffer::add);
+              }
+              scheduleDelivery();
+            }
+          } catch (WakeupException e) {
+            // Demand changed or the stream is stopping
+          }
+
+          commitDelivered();
+        }
+      } catch (Exception e) {
+        if (pendingError == null) {
+          pendingError = e;
+        }
+      } finally {
+        // No record is taken after this point, so the final commit covers everything delivered
+        synchronized (buffer) {
+          stopped = true;
+          buffer.clear();
+        }
+        try {
+          try {
+            commitFinal();
+          } catch (Exception e) {
+            System.err.println("Error committing delivered offsets: " + e.getMessage());
+          }
+          consumer.close();
+        } catch (Exception e) {
+          System.err.println("Error closing consumer: " + e.getMessage());
+        } finally {
+          // The subscriber gets its terminal signal even if the consumer fails to close
+          finished = true;
+          scheduleDelivery();
+          deliveryExecutor.shutdown();
+        }
+      }
+    }
+
+    /**
+     * Run a delivery pass on the delivery thread; requests made while a pass is running trigger another pass
+     */
+    private void scheduleDelivery() {
+      if (deliveryRequests.getAndIncrement() == 0) {
+        try {
+          deliveryExecutor.execute(this::deliver);
+        } catch (RejectedExecutionException e) {
+          // Stream already terminated
+        }
+      }
+    }
+
+    /**
+     * Hand buffered records to the subscriber while it has outstanding demand, then send the
+     * terminal signal once the stream has stopped
+     */
+    private void deliver() {
+      int requests = deliveryRequests.get();
+      do {
+        while (!terminated && !cancelled && demand.get() > 0) {
+          ConsumerRecord<Object, CloudEvent> record = take();
+          if (record == null) {
+            break;
+          }
+
+          Customer customer;
+          try {
+            customer = CloudEventUtil.cloudEventToCustomer(record.value());
+          } catch (Exception e) {
+            System.err.println("Error deserializing customer: " + e.getMessage());
+            continue;
+          }
+
+          demand.decrementAndGet();
+          try {
+            subscriber.onNext(customer);
+          } catch (Throwable t) {
+            // Rule 2.13: a throwing subscriber is treated as having cancelled, and is not signalled again
+            System.err.println("Subscriber failed in onNext, cancelling: " + t);
+            terminated = true;
+            cancel();
+          }
+        }
+
+        if (!terminated && finished) {
+          terminated = true;
+          if (pendingError != null) {
+            subscriber.onError(pendingError);
+          } else if (completed && !cancelled) {
+            subscriber.onComplete();
+          }
+        }
+
+        requests = deliveryRequests.addAndGet(-requests);
+      } while (requests != 0);
+    }
+
+    /**
+     * Take the next buffered record and mark its offset as delivered; wakes the polling thread
+     * once the buffer is drained so fetching resumes without waiting out the poll timeout
+     */
+    private ConsumerRecord<Object, CloudEvent> take() {
+      ConsumerRecord<Object, CloudEvent> record;
+      boolean drained;
+      synchronized (buffer) {
+        if (stopped) {
+          return null;
+        }
+        record = buffer.poll();
+        if (record == null) {
+          return null;
+        }
+        delivered.put(new TopicPartition(record.topic(), record.partition()),
+                      new OffsetAndMetadata(record.offset() + 1));
+        drained = buffer.isEmpty();
+      }
+
+      uncommitted.set(true);
+      if (drained) {
+        consumer.wakeup();
+      }
+      return record;
+    }
+
+    /**
+     * Pause fetching once demand is used up or records are waiting, and resume when both clear
+     */
+    private void updatePause() {
+      boolean empty;
+      synchronized (buffer) {
+        empty = buffer.isEmpty();
+      }
+      boolean starved = demand.get() == 0 || !empty;
+
+      if (starved && !paused) {
+        consumer.pause(consumer.assignment());
+        paused = true;
+      } else if (!starved && paused) {
+        consumer.resume(consumer.paused());
+        paused = false;
+      }
+    }
+
+    private void commitFinal() {
+      Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>(delivered);
+      try {
+        consumer.commitSync(offsets);
+      } catch (WakeupException e) {
+        // A wakeup issued while stopping is consumed by the first attempt
+        consumer.commitSync(offsets);
+      }
+      delivered.keySet().removeAll(offsets.keySet());
+    }
+
+    private void commitDelivered() {
+      if (uncommitted.getAndSet(false)) {
+        consumer.commitAsync(new HashMap<>(delivered), null);
+      }
+    }
+
+    /**
+     * Keeps newly assigned partitions paused and drops records of revoked ones
+     */
+    private class PauseOnAssign implements ConsumerRebalanceListener {
+      @Override
+      public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        if (paused) {
+          consumer.pause(partitions);
+        }
+      }
+
+      @Override
+      public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> revoked = new HashMap<>();
+        synchronized (buffer) {
+          if (stopped) {
+            // Called from consumer.close(); the final commit already covered every delivered record
+            return;
+          }
+          // Undelivered records will be re-read by the new owner from the committed offsets
+          buffer.removeIf(r -> partitions.contains(new TopicPartition(r.topic(), r.partition())));
+
+          for (TopicPartition partition : partitions) {
+            OffsetAndMetadata offset = delivered.remove(partition);
+            if (offset != null) {
+              revoked.put(partition, offset);
+            }
+          }
+        }
+        if (!revoked.isEmpty()) {
+          consumer.commitSync(revoked);
+        }
+      }
+    }
+  }
+}
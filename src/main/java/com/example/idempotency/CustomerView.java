@@ -0,0 +1,152 @@
+package com.example.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.cloudevents.CloudEvent;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process materialized view of the latest Customer state per id, fed by an EventConsumer.
+ *
+ * Customers are held as {@link CompactCustomer}s keyed by primitive id, and only materialized
+ * when looked up.
+ */
+public class CustomerView {
+  private final StripedLongMap<CompactCustomer> customers = new StripedLongMap<>();
+  private final ConcurrentHashMap<Integer, Long> offsets = new ConcurrentHashMap<>();
+  private final Path snapshotPath;
+
+  /**
+   * Create an in-memory view without snapshot support
+   */
+  public CustomerView() {
+    this(null);
+  }
+
+  /**
+   * Create a view backed by an on-disk snapshot, restoring it if the file exists
+   */
+  public CustomerView(Path snapshotPath) {
+    this.snapshotPath = snapshotPath;
+
+    if (snapshotPath != null && Files.exists(snapshotPath)) {
+      restore();
+    }
+  }
+
+  /**
+   * Apply a consumed record to the view and remember the next offset to read. The offset
+   * advances even if the record cannot be applied, so a bad record is not replayed forever.
+   */
+  public void apply(ConsumerRecord<?, CloudEvent> record) {
+    try {
+      apply(record.value());
+    } finally {
+      offsets.merge(record.partition(), record.offset() + 1, Math::max);
+    }
+  }
+
+  /**
+   * Apply a single CloudEvent to the view
+   */
+  public void apply(CloudEvent event) {
+    if (event == null) {
+      return;
+    }
+
+    switch (event.getType()) {
+      case CloudEventUtil.EVENT_TYPE_CREATED, CloudEventUtil.EVENT_TYPE_UPDATED -> {
+        Customer customer = CloudEventUtil.cloudEventToCustomer(event);
+        customers.put(customer.id(), CompactCustomer.of(customer));
+      }
+      case CloudEventUtil.EVENT_TYPE_DELETED -> customers.remove(CloudEventUtil.customerId(event));
+      default -> {
+        // Not a customer state change, nothing to apply
+      }
+    }
+  }
+
+  /**
+   * Look up the latest state of a customer; lock-free and safe while ingestion continues
+   */
+  public Customer get(long id) {
+    CompactCustomer customer = customers.get(id);
+    return customer != null ? customer.toCustomer() : null;
+  }
+
+  /**
+   * Get the number of customers currently in the view
+   */
+  public int size() {
+    return customers.size();
+  }
+
+  /**
+   * Get the next offset to read per partition of the events topic
+   */
+  public Map<Integer, Long> getOffsets() {
+    return Map.copyOf(offsets);
+  }
+
+  /**
+   * Write the current state to the snapshot file
+   */
+  public void snapshot() throws IOException {
+    if (snapshotPath == null) {
+      throw new IllegalStateException("No snapshot path configured for this view");
+    }
+
+    // Offsets are copied before the customers, so a snapshot taken during ingestion can only
+    // be behind its state; replaying from those offsets converges to the same view.
+    Map<Integer, Long> snapshotOffsets = Map.copyOf(offsets);
+    List<Customer> snapshotCustomers = new ArrayList<>();
+    customers.forEachValue(customer -> snapshotCustomers.add(customer.toCustomer()));
+    Snapshot snapshot = new Snapshot(snapshotOffsets, snapshotCustomers);
+
+    Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmp)) {
+      objectMapper().writeValue(out, snapshot);
+    }
+    Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    System.out.printf("Snapshot of %d customers written to %s%n", snapshot.customers().size(), snapshotPath);
+  }
+
+  /**
+   * Load the view from the snapshot file
+   */
+  private void restore() {
+    try (InputStream in = Files.newInputStream(snapshotPath)) {
+      Snapshot snapshot = objectMapper().readValue(in, Snapshot.class);
+
+      snapshot.customers().forEach(customer -> customers.put(customer.id(), CompactCustomer.of(customer)));
+      offsets.putAll(snapshot.offsets());
+
+      System.out.printf("Restored %d customers from %s, resuming at offsets %s%n",
+                        customers.size(), snapshotPath, offsets);
+    } catch (IOException e) {
+      throw new RuntimeException("Error restoring customer view snapshot", e);
+    }
+  }
+
+  private static ObjectMapper objectMapper() {
+    return CloudEventUtil.getObjectMapper();
+  }
+
+  /**
+   * On-disk snapshot layout
+   */
+  record Snapshot(Map<Integer, Long> offsets, Collection<Customer> customers) {
+  }
+}
@@ -0,0 +1,516 @@
+package com.example.idempotency;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline audit of duplicate messages in a range of the events topic.
+ *
+ * Each partition is read by its own group-less consumer, in parallel, between offset or
+ * timestamp bounds. Keys are counted with a {@link SpillingKeyCounter} so memory stays within
+ * the configured budget regardless of how many records are scanned. The sorted keys of all
+ * partitions are then merged, so a key found in several partitions (after a partition count
+ * increase, or with keys written in more than one encoding) is still counted once.
+ *
+ * Usage:
+ *   --from-offset N --to-offset N      offset range per partition (to is exclusive)
+ *   --from-time ISO --to-time ISO      timestamp range, e.g. 2025-01-01T00:00:00Z
+ *   --key-mode STRING|LONG|LONG_STRING_COMPATIBLE   STRING only accepts decimal keys
+ *   --parallelism N                    concurrent partition readers (default: all partitions)
+ *   --memory-mb N                      total key buffer budget across readers (default: 256)
+ *   --spill-dir PATH                   directory for spilled runs (default: java.io.tmpdir)
+ *   --top N                            most duplicated keys to report (default: 10)
+ */
+public class DuplicateAudit {
+  private static final String TYPE_HEADER = "ce_type";
+  private static final String UNKNOWN_TYPE = "unknown";
+  private static final String OTHER_TYPE = "other";
+  private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+  // Each open run holds a file descriptor and a read buffer
+  private static final int MAX_MERGE_FAN_IN = 128;
+
+  public static void main(String[] args) throws Exception {
+    AuditOptions options;
+    try {
+      options = AuditOptions.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println("Usage: DuplicateAudit [--from-offset N --to-offset N | --from-time ISO --to-time ISO]"
+                             + " [--key-mode MODE] [--parallelism N] [--memory-mb N] [--spill-dir PATH] [--top N]");
+      System.exit(1);
+      return;
+    }
+
+    System.out.println("=================================================");
+    System.out.println("Duplicate Audit");
+    System.out.println("=================================================");
+    System.out.println("Topic: " + ConfluentConfig.TOPIC);
+
+    Map<TopicPartition, long[]> ranges = resolveRanges(options);
+    if (ranges.isEmpty()) {
+      System.out.println("No partitions found for " + ConfluentConfig.TOPIC);
+      return;
+    }
+
+    int parallelism = Math.min(options.parallelism > 0 ? options.parallelism : ranges.size(), ranges.size());
+    long budgetBytes = options.memoryMb * 1024L * 1024L;
+    long budgetKeys = budgetBytes / Long.BYTES;
+    int keysPerReader = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1024, budgetKeys / parallelism));
+    // The merge runs after the readers are done, so the whole budget is available for run buffers,
+    // less one buffer for the output of intermediate passes
+    int maxFanIn = (int) Math.max(2, Math.min(MAX_MERGE_FAN_IN, budgetBytes / SpillingKeyCounter.IO_BUFFER_SIZE - 1));
+
+    System.out.println("Partitions: " + ranges.size());
+    System.out.println("Parallel Readers: " + parallelism);
+    System.out.println("Key Buffer Per Reader: " + keysPerReader + " keys");
+    System.out.println("Merge Fan-In: " + maxFanIn + " runs");
+
+    long start = System.nanoTime();
+    TypeDictionary types = new TypeDictionary();
+    List<PartitionReport> reports = new ArrayList<>();
+    List<SpillingKeyCounter> counters = new ArrayList<>();
+
+    try {
+      ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+      try {
+        List<Future<PartitionReport>> futures = new ArrayList<>();
+        for (Map.Entry<TopicPartition, long[]> range : ranges.entrySet()) {
+          SpillingKeyCounter counter = new SpillingKeyCounter(keysPerReader, options.spillDir);
+          PartitionReport report = new PartitionReport(range.getKey().partition());
+          counters.add(counter);
+          reports.add(report);
+          futures.add(executor.submit(new PartitionReader(
+              range.getKey(), range.getValue()[0], range.getValue()[1], options, counter, report, types)));
+        }
+        for (Future<PartitionReport> future : futures) {
+          future.get();
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+
+      System.out.println("Merging keys across partitions...");
+      AuditTotals totals = new AuditTotals(reports, types, options.top);
+      SpillingKeyCounter.merge(counters, maxFanIn, options.spillDir, totals::addKey);
+
+      printReport(totals, Duration.ofNanos(System.nanoTime() - start));
+    } finally {
+      counters.forEach(SpillingKeyCounter::close);
+    }
+  }
+
+  /**
+   * Resolve the [start, end) offsets to read for every partition of the topic
+   */
+  private static Map<TopicPartition, long[]> resolveRanges(AuditOptions options) {
+    Map<TopicPartition, long[]> ranges = new TreeMap<>(Comparator.comparingInt(TopicPartition::partition));
+
+    try (KafkaConsumer<byte[], byte[]> consumer = new KafkaConsumer<>(ConfluentConfig.createAssignedConsumerProps())) {
+      List<TopicPartition> partitions = new ArrayList<>();
+      for (PartitionInfo info : consumer.partitionsFor(ConfluentConfig.TOPIC)) {
+        partitions.add(new TopicPartition(info.topic(), info.partition()));
+      }
+
+      Map<TopicPartition, Long> beginning = consumer.beginningOffsets(partitions);
+      Map<TopicPartition, Long> end = consumer.endOffsets(partitions);
+      Map<TopicPartition, OffsetAndTimestamp> fromTimes = offsetsForTime(consumer, partitions, options.fromTime);
+      Map<TopicPartition, OffsetAndTimestamp> toTimes = offsetsForTime(consumer, partitions, options.toTime);
+
+      for (TopicPartition partition : partitions) {
+        long first = beginning.get(partition);
+        long last = end.get(partition);
+
+        long from = Math.max(first, options.fromOffset);
+        long to = Math.min(last, options.toOffset);
+        if (options.fromTime != null) {
+          from = Math.max(from, offsetOrEnd(fromTimes.get(partition), last));
+        }
+        if (options.toTime != null) {
+          to = Math.min(to, offsetOrEnd(toTimes.get(partition), last));
+        }
+
+        ranges.put(partition, new long[]{from, Math.max(from, to)});
+      }
+    }
+
+    return ranges;
+  }
+
+  private static Map<TopicPartition, OffsetAndTimestamp> offsetsForTime(
+      KafkaConsumer<byte[], byte[]> consumer, List<TopicPartition> partitions, Instant time) {
+    if (time == null) {
+      return Collections.emptyMap();
+    }
+
+    Map<TopicPartition, Long> query = new HashMap<>();
+    for (TopicPartition partition : partitions) {
+      query.put(partition, time.toEpochMilli());
+    }
+    return consumer.offsetsForTimes(query);
+  }
+
+  private static long offsetOrEnd(OffsetAndTimestamp offset, long end) {
+    return offset != null ? offset.offset() : end;
+  }
+
+  /**
+   * Reads one partition range and counts its keys, leaving them spilled in the counter for the merge
+   */
+  private static class PartitionReader implements Callable<PartitionReport> {
+    private final TopicPartition partition;
+    private final long from;
+    private final long to;
+    private final AuditOptions options;
+    private final SpillingKeyCounter counter;
+    private final PartitionReport report;
+    private final TypeDictionary types;
+
+    // Local cache of the shared dictionary, so most records take no lock
+    private final Map<String, Integer> typeIds = new HashMap<>();
+
+    PartitionReader(TopicPartition partition, long from, long to, AuditOptions options,
+                    SpillingKeyCounter counter, PartitionReport report, TypeDictionary types) {
+      this.partition = partition;
+      this.from = from;
+      this.to = to;
+      this.options = options;
+      this.counter = counter;
+      this.report = report;
+      this.types = types;
+    }
+
+    @Override
+    public PartitionReport call() throws Exception {
+      try (KafkaConsumer<byte[], byte[]> consumer = new KafkaConsumer<>(ConfluentConfig.createAssignedConsumerProps())) {
+        if (from < to) {
+          consumer.assign(Collections.singletonList(partition));
+          consumer.seek(partition, from);
+
+          // Positions can skip offsets (compaction, transaction markers), so track the position, not counts
+          while (consumer.position(partition) < to) {
+            for (ConsumerRecord<byte[], byte[]> record : consumer.poll(POLL_TIMEOUT)) {
+              if (record.offset() >= to) {
+                break;
+              }
+              count(record);
+            }
+          }
+        }
+      }
+
+      counter.finish();
+      report.spills = counter.getSpillCount();
+
+      System.out.printf("Partition %d: scanned offsets [%d, %d), %d records, %d runs%n",
+                        partition.partition(), from, to, report.records, report.spills);
+      return report;
+    }
+
+    private void count(ConsumerRecord<byte[], byte[]> record) {
+      byte[] key = record.key();
+      if (key == null) {
+        report.skipped++;
+        return;
+      }
+
+      long id;
+      try {
+        id = decodeKey(key, options.keyMode);
+      } catch (NumberFormatException e) {
+        report.skipped++;
+        return;
+      }
+
+      counter.add(id, typeId(record));
+      report.records++;
+    }
+
+    /**
+     * Dictionary-encode the event type from the binary-mode CloudEvent header, without parsing the payload
+     */
+    private int typeId(ConsumerRecord<byte[], byte[]> record) {
+      Header header = record.headers().lastHeader(TYPE_HEADER);
+      String type = header != null ? new String(header.value(), StandardCharsets.UTF_8) : UNKNOWN_TYPE;
+      return typeIds.computeIfAbsent(type, types::idOf);
+    }
+  }
+
+  /**
+   * Decode a message key to the customer ID without allocating a String. STRING mode only accepts
+   * decimal keys; the long modes accept both encodings, since a migrating topic holds both.
+   */
+  static long decodeKey(byte[] key, ConfluentConfig.KeyMode keyMode) {
+    return keyMode == ConfluentConfig.KeyMode.STRING ? CustomerKeys.parseDecimal(key) : CustomerKeys.decode(key);
+  }
+
+  /**
+   * Event type names shared by all readers, so a type id means the same in every partition
+   */
+  private static class TypeDictionary {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    synchronized int idOf(String type) {
+      Integer id = ids.get(type);
+      if (id == null) {
+        if (names.size() == SpillingKeyCounter.MAX_TYPES - 1) {
+          type = OTHER_TYPE;
+          id = ids.get(type);
+        }
+        if (id == null) {
+          id = names.size();
+          ids.put(type, id);
+          names.add(type);
+        }
+      }
+      return id;
+    }
+
+    synchronized String nameOf(int id) {
+      return names.get(id);
+    }
+  }
+
+  /**
+   * Scan and dedup results for one partition; keys also found in other partitions are counted
+   * as unique here, and their cross-partition duplicates only appear in the totals
+   */
+  private static class PartitionReport {
+    final int partition;
+    long records = 0;
+    long skipped = 0;
+    long uniqueKeys = 0;
+    long duplicateRecords = 0;
+    long duplicatedKeys = 0;
+    int spills = 0;
+
+    PartitionReport(int partition) {
+      this.partition = partition;
+    }
+  }
+
+  private record KeyCount(long key, String partitions, long count) {
+  }
+
+  /**
+   * Results across all partitions, fed one key at a time by the merge
+   */
+  private static class AuditTotals {
+    final List<PartitionReport> reports;
+    final TypeDictionary types;
+    final int top;
+    long uniqueKeys = 0;
+    long duplicateRecords = 0;
+    long duplicatedKeys = 0;
+    long crossPartitionKeys = 0;
+    final long[][] byType = new long[SpillingKeyCounter.MAX_TYPES][3]; // records, unique keys, duplicates
+    final PriorityQueue<KeyCount> topKeys = new PriorityQueue<>(Comparator.comparingLong(KeyCount::count));
+    private final long[] typeCounts = new long[SpillingKeyCounter.MAX_TYPES];
+
+    AuditTotals(List<PartitionReport> reports, TypeDictionary types, int top) {
+      this.reports = reports;
+      this.types = types;
+      this.top = top;
+    }
+
+    /**
+     * Account for one key; sources are ascending, so each partition's entries are contiguous
+     */
+    void addKey(long key, int[] sources, long[] counts, int size) {
+      long total = 0;
+      int partitions = 0;
+
+      for (int i = 0; i < size; ) {
+        int index = sources[i] / SpillingKeyCounter.MAX_TYPES;
+        long inPartition = 0;
+        for (; i < size && sources[i] / SpillingKeyCounter.MAX_TYPES == index; i++) {
+          inPartition += counts[i];
+          typeCounts[sources[i] % SpillingKeyCounter.MAX_TYPES] += counts[i];
+        }
+
+        PartitionReport report = reports.get(index);
+        report.uniqueKeys++;
+        if (inPartition > 1) {
+          report.duplicateRecords += inPartition - 1;
+          report.duplicatedKeys++;
+        }
+        total += inPartition;
+        partitions++;
+      }
+
+      for (int type = 0; type < typeCounts.length; type++) {
+        long count = typeCounts[type];
+        if (count > 0) {
+          byType[type][0] += count;
+          byType[type][1]++;
+          byType[type][2] += count - 1;
+          typeCounts[type] = 0;
+        }
+      }
+
+      uniqueKeys++;
+      if (partitions > 1) {
+        crossPartitionKeys++;
+      }
+      if (total > 1) {
+        duplicateRecords += total - 1;
+        duplicatedKeys++;
+        offerTopKey(key, sources, size, total - 1);
+      }
+    }
+
+    private void offerTopKey(long key, int[] sources, int size, long count) {
+      if (top <= 0 || (topKeys.size() == top && topKeys.peek().count() >= count)) {
+        return;
+      }
+      if (topKeys.size() == top) {
+        topKeys.poll();
+      }
+      topKeys.add(new KeyCount(key, partitionList(sources, size), count));
+    }
+
+    private String partitionList(int[] sources, int size) {
+      StringBuilder partitions = new StringBuilder();
+      int previous = -1;
+      for (int i = 0; i < size; i++) {
+        int index = sources[i] / SpillingKeyCounter.MAX_TYPES;
+        if (index != previous) {
+          if (partitions.length() > 0) {
+            partitions.append(',');
+          }
+          partitions.append(reports.get(index).partition);
+          previous = index;
+        }
+      }
+      return partitions.toString();
+    }
+  }
+
+  /**
+   * Print the per-partition, per-type and overall results
+   */
+  private static void printReport(AuditTotals totals, Duration elapsed) {
+    long records = 0, skipped = 0;
+
+    System.out.println("\n=== BY PARTITION ===");
+    System.out.printf("%-10s %14s %14s %14s %14s %8s%n",
+                      "Partition", "Records", "Unique Keys", "Duplicates", "Dup. Keys", "Spills");
+    for (PartitionReport report : totals.reports) {
+      System.out.printf("%-10d %14d %14d %14d %14d %8d%n", report.partition, report.records,
+                        report.uniqueKeys, report.duplicateRecords, report.duplicatedKeys, report.spills);
+      records += report.records;
+      skipped += report.skipped;
+    }
+
+    System.out.println("\n=== BY EVENT TYPE ===");
+    System.out.printf("%-24s %14s %14s %14s%n", "Type", "Records", "Unique Keys", "Duplicates");
+    Map<String, long[]> byType = new TreeMap<>();
+    for (int type = 0; type < totals.byType.length; type++) {
+      if (totals.byType[type][0] > 0) {
+        byType.put(totals.types.nameOf(type), totals.byType[type]);
+      }
+    }
+    byType.forEach((type, stats) ->
+        System.out.printf("%-24s %14d %14d %14d%n", type, stats[0], stats[1], stats[2]));
+
+    System.out.println("\n=== TOP DUPLICATED KEYS ===");
+    List<KeyCount> sortedKeys = new ArrayList<>(totals.topKeys);
+    sortedKeys.sort(Comparator.comparingLong(KeyCount::count).reversed());
+    for (KeyCount keyCount : sortedKeys) {
+      System.out.printf("Key=%d, Partitions=%s, Duplicates=%d%n",
+                        keyCount.key(), keyCount.partitions(), keyCount.count());
+    }
+
+    System.out.println("\n=== RESULTS ===");
+    System.out.println("Records Scanned: " + records);
+    System.out.println("Records Skipped (null or non-numeric key): " + skipped);
+    System.out.println("Unique Keys: " + totals.uniqueKeys);
+    System.out.println("Duplicate Records: " + totals.duplicateRecords);
+    System.out.println("Duplicated Keys: " + totals.duplicatedKeys);
+    System.out.println("Keys In Multiple Partitions: " + totals.crossPartitionKeys);
+    if (totals.crossPartitionKeys > 0) {
+      System.out.println("  Some keys were written to more than one partition, e.g. after a partition count");
+      System.out.println("  increase or with LONG and STRING keys on the same topic. The totals count each key");
+      System.out.println("  once; the per-partition rows do not include duplicates that span partitions.");
+    }
+    System.out.printf("Duplication Rate: %.2f%%%n",
+                      totals.uniqueKeys > 0 ? (double) totals.duplicateRecords / totals.uniqueKeys * 100 : 0);
+    System.out.printf("Elapsed: %.1fs%n", elapsed.toMillis() / 1000.0);
+  }
+
+  /**
+   * Command line options
+   */
+  private static class AuditOptions {
+    long fromOffset = 0;
+    long toOffset = Long.MAX_VALUE;
+    Instant fromTime;
+    Instant toTime;
+    ConfluentConfig.KeyMode keyMode = ConfluentConfig.KeyMode.STRING;
+    int parallelism = 0;
+    long memoryMb = 256;
+    Path spillDir = Path.of(System.getProperty("java.io.tmpdir"));
+    int top = 10;
+
+    static AuditOptions parse(String[] args) {
+      AuditOptions options = new AuditOptions();
+
+      for (int i = 0; i < args.length; i += 2) {
+        if (i + 1 >= args.length) {
+          throw new IllegalArgumentException("Missing value for " + args[i]);
+        }
+        String option = args[i];
+        String value = args[i + 1];
+
+        boolean known = true;
+        try {
+          switch (option) {
+            case "--from-offset" -> options.fromOffset = Long.parseLong(value);
+            case "--to-offset" -> options.toOffset = Long.parseLong(value);
+            case "--from-time" -> options.fromTime = Instant.parse(value);
+            case "--to-time" -> options.toTime = Instant.parse(value);
+            case "--key-mode" -> options.keyMode = ConfluentConfig.KeyMode.valueOf(value);
+            case "--parallelism" -> options.parallelism = Integer.parseInt(value);
+            case "--memory-mb" -> options.memoryMb = Long.parseLong(value);
+            case "--spill-dir" -> options.spillDir = Path.of(value);
+            case "--top" -> options.top = Integer.parseInt(value);
+            default -> known = false;
+          }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+          throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+        }
+
+        if (!known) {
+          throw new IllegalArgumentException("Unknown option " + option);
+        }
+      }
+
+      if (options.memoryMb <= 0) {
+        throw new IllegalArgumentException("--memory-mb must be positive");
+      }
+      return options;
+    }
+  }
+}
@@ -1,36 +1,59 @@
 package com.example.idempotency;
 
 import io.cloudevents.CloudEvent;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
 
 import java.time.Duration;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Map;
 import java.util.Properties;
 
 /**
  * Simple consumer for CloudEvents from Kafka
  */
 public class EventConsumer implements AutoCloseable {
-  private final KafkaConsumer<String, CloudEvent> consumer;
-  private final Set<String> processedIds = new HashSet<>();
-  private final Set<String> duplicateIds = new HashSet<>();
+  private final KafkaConsumer<Object, CloudEvent> consumer;
+  // Keys of every encoding are normalized to the customer ID, so a customer sent once with a
+  // String key and once with a long key during a migration is still a duplicate
+  private final LongHashSet processedIds = new LongHashSet();
+  private final LongHashSet duplicateIds = new LongHashSet();
+  private final CustomerView view;
   private int totalReceived = 0;
 
   /**
    * Create a consumer for the events topic
    */
   public EventConsumer() {
-    Properties props = ConfluentConfig.createConsumerProps();
+    this(null);
+  }
+
+  /**
+   * Create a consumer for the events topic that also feeds a materialized customer view.
+   * Partitions covered by the view's snapshot are replayed from the snapshot offsets.
+   */
+  public EventConsumer(CustomerView view) {
+    this(ConfluentConfig.KeyMode.STRING, view);
+  }
+
+  /**
+   * Create a consumer for the events topic with the given message key encoding,
+   * optionally feeding a materialized customer view
+   */
+  public EventConsumer(ConfluentConfig.KeyMode keyMode, CustomerView view) {
+    this.view = view;
+    Properties props = ConfluentConfig.createConsumerProps(keyMode);
 
     this.consumer = new KafkaConsumer<>(props);
-    this.consumer.subscribe(Collections.singletonList(ConfluentConfig.TOPIC));
+    this.consumer.subscribe(Collections.singletonList(ConfluentConfig.TOPIC), new SnapshotSeeker());
 
-    // Initial poll to trigger partition assignment
-    this.consumer.poll(Duration.ofMillis(100));
+    // Initial poll to trigger partition assignment; its records are processed like any other
+    ConsumerRecords<Object, CloudEvent> initial = this.consumer.poll(Duration.ofMillis(100));
+    initial.forEach(this::processEvent);
     System.out.println("Consumer subscribed to " + ConfluentConfig.TOPIC);
   }
 
@@ -39,9 +62,9 @@ public class EventConsumer implements AutoCloseable {
    */
   public int pollEvents(Duration timeout) {
     int count = 0;
-    ConsumerRecords<String, CloudEvent> records = consumer.poll(timeout);
+    ConsumerRecords<Object, CloudEvent> records = consumer.poll(timeout);
 
-    for (ConsumerRecord<String, CloudEvent> record : records) {
+    for (ConsumerRecord<Object, CloudEvent> record : records) {
       processEvent(record);
       count++;
     }
@@ -52,21 +75,34 @@ public class EventConsumer implements AutoCloseable {
   /**
    * Process an event and track duplicates
    */
-  private void processEvent(ConsumerRecord<String, CloudEvent> record) {
+  private void processEvent(ConsumerRecord<Object, CloudEvent> record) {
     CloudEvent event = record.value();
-    String key = record.key(); // customer ID used as key
     String eventId = event.getId();
     String eventType = event.getType();
 
     totalReceived++;
 
+    if (view != null) {
+      try {
+        view.apply(record);
+      } catch (Exception e) {
+        System.err.println("Error applying event " + eventId + " to customer view: " + e.getMessage());
+      }
+    }
+
     // We're detecting duplicates based on the message key (customer ID)
-    if (processedIds.contains(key)) {
-      duplicateIds.add(key);
+    long key;
+    try {
+      key = CustomerKeys.toCustomerId(record.key());
+    } catch (Exception e) {
+      System.err.println("Error decoding key of event " + eventId + ": " + e.getMessage());
+      return;
+    }
+
+    if (!markProcessed(key)) {
       System.out.printf("DUPLICATE detected: Event ID=%s, Key=%s, Type=%s%n",
                         eventId, key, eventType);
     } else {
-      processedIds.add(key);
       System.out.printf("Processed: Event ID=%s, Key=%s, Type=%s%n",
                         eventId, key, eventType);
 
@@ -81,6 +117,17 @@ public class EventConsumer implements AutoCloseable {
     }
   }
 
+  /**
+   * Record a message key as processed, returning false if it was already seen
+   */
+  private boolean markProcessed(long id) {
+    if (processedIds.add(id)) {
+      return true;
+    }
+    duplicateIds.add(id);
+    return false;
+  }
+
   /**
    * Get counts of unique messages
    */
@@ -111,10 +158,42 @@ public class EventConsumer implements AutoCloseable {
     totalReceived = 0;
   }
 
+  /**
+   * Get the materialized view fed by this consumer, or null if none was configured
+   */
+  public CustomerView getView() {
+    return view;
+  }
+
   @Override
   public void close() {
     if (consumer != null) {
       consumer.close();
     }
   }
+
+  /**
+   * Seeks newly assigned partitions to the offsets recorded in the view's snapshot
+   */
+  private class SnapshotSeeker implements ConsumerRebalanceListener {
+    @Override
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+      if (view == null) {
+        return;
+      }
+
+      Map<Integer, Long> offsets = view.getOffsets();
+      for (TopicPartition partition : partitions) {
+        Long offset = offsets.get(partition.partition());
+        if (offset != null) {
+          consumer.seek(partition, offset);
+        }
+      }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+      // Nothing to do, the view keeps its own offsets
+    }
+  }
 }
@@ -3,33 +3,80 @@ package com.example.idempotency;
 import io.cloudevents.CloudEvent;
 import java.util.concurrent.TimeoutException;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
 
 /**
  * Simple producer for CloudEvents to Kafka
  */
 public class EventProducer implements AutoCloseable {
-  private final KafkaProducer<String, CloudEvent> producer;
+  private static final int DEFAULT_BATCH_SIZE = 16384;
+  private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+  private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(5);
+
+  private final KafkaProducer<Object, CloudEvent> producer;
   private final String topic;
   private final boolean idempotent;
+  private final ConfluentConfig.KeyMode keyMode;
+  private final int batchSize;
+  private final boolean shared;
+  private volatile LongConsumer ackLatencyListener;
 
   /**
    * Create a producer with specified idempotency setting
    */
   public EventProducer(boolean idempotent) {
+    this(idempotent, ConfluentConfig.KeyMode.STRING);
+  }
+
+  /**
+   * Create a producer with specified idempotency setting and message key encoding
+   */
+  public EventProducer(boolean idempotent, ConfluentConfig.KeyMode keyMode) {
+    this(idempotent, keyMode, ConfluentConfig.ProducerTuning.DEFAULT);
+  }
+
+  /**
+   * Create a producer with specified idempotency setting, message key encoding and batching settings
+   */
+  public EventProducer(boolean idempotent, ConfluentConfig.KeyMode keyMode, ConfluentConfig.ProducerTuning tuning) {
+    this(idempotent, keyMode, tuning, true);
+  }
+
+  /**
+   * Create a producer that either shares its KafkaProducer with other users of the same configuration,
+   * or owns a dedicated one. flush() and the producer metrics cover every user of a shared producer.
+   */
+  public EventProducer(boolean idempotent, ConfluentConfig.KeyMode keyMode, ConfluentConfig.ProducerTuning tuning,
+                       boolean shared) {
     this.idempotent = idempotent;
+    this.keyMode = keyMode;
     this.topic = ConfluentConfig.TOPIC;
 
-    Properties props = ConfluentConfig.createProducerProps(idempotent);
+    Properties props = ConfluentConfig.createProducerProps(idempotent, keyMode, tuning);
     ConfluentConfig.printProducerConfig(props);
 
-    this.producer = new KafkaProducer<>(props);
+    Object configuredBatchSize = props.get(ProducerConfig.BATCH_SIZE_CONFIG);
+    this.batchSize = configuredBatchSize != null
+        ? Integer.parseInt(configuredBatchSize.toString())
+        : DEFAULT_BATCH_SIZE;
+
+    // KafkaProducer is thread-safe, so shared producers with the same configuration use one instance
+    this.shared = shared;
+    this.producer = shared ? KafkaClientRegistry.acquireProducer(props) : new KafkaProducer<>(props);
   }
 
   /**
@@ -37,9 +84,9 @@ public class EventProducer implements AutoCloseable {
    */
   public RecordMetadata sendEvent(CloudEvent event)
       throws ExecutionException, InterruptedException, TimeoutException {
-    String key = event.getSubject(); // Using customer ID as the message key
+    Object key = keyFor(event); // Using customer ID as the message key
 
-    ProducerRecord<String, CloudEvent> record = new ProducerRecord<>(topic, key, event);
+    ProducerRecord<Object, CloudEvent> record = new ProducerRecord<>(topic, key, event);
     Future<RecordMetadata> future = producer.send(record);
 
     RecordMetadata metadata = future.get(10, TimeUnit.SECONDS);
@@ -49,6 +96,88 @@ public class EventProducer implements AutoCloseable {
     return metadata;
   }
 
+  /**
+   * Send a group of CloudEvents without waiting for each one, then flush and wait for all acks.
+   * Larger groups let the producer fill batches; each flush bounds how long records linger.
+   * On a shared producer the flush also waits for other users' records.
+   *
+   * @return number of events acknowledged
+   */
+  public int sendBatch(List<CloudEvent> events)
+      throws ExecutionException, InterruptedException, TimeoutException {
+    return send(events, true);
+  }
+
+  /**
+   * Send a group of CloudEvents without waiting for each one, then wait for all acks.
+   * Records are batched by batch.size and linger.ms alone, with no forced flush.
+   *
+   * @return number of events acknowledged
+   */
+  public int sendAll(List<CloudEvent> events)
+      throws ExecutionException, InterruptedException, TimeoutException {
+    return send(events, false);
+  }
+
+  private int send(List<CloudEvent> events, boolean flush)
+      throws ExecutionException, InterruptedException, TimeoutException {
+    LongConsumer listener = ackLatencyListener;
+    List<Future<RecordMetadata>> futures = new ArrayList<>(events.size());
+    for (CloudEvent event : events) {
+      ProducerRecord<Object, CloudEvent> record = new ProducerRecord<>(topic, keyFor(event), event);
+      if (listener == null) {
+        futures.add(producer.send(record));
+      } else {
+        long sentAt = System.nanoTime();
+        futures.add(producer.send(record, (metadata, exception) -> {
+          if (exception == null) {
+            listener.accept(System.nanoTime() - sentAt);
+          }
+        }));
+      }
+    }
+
+    if (flush) {
+      producer.flush();
+    }
+
+    for (Future<RecordMetadata> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    return futures.size();
+  }
+
+  /**
+   * Get a producer-level metric such as batch-size-avg, record-queue-time-avg or request-latency-avg.
+   * Returns NaN until the metric has been recorded.
+   */
+  public double getMetric(String name) {
+    for (Map.Entry<MetricName, ? extends Metric> entry : producer.metrics().entrySet()) {
+      MetricName metricName = entry.getKey();
+      if (metricName.name().equals(name) && metricName.group().equals(PRODUCER_METRICS_GROUP)) {
+        Object value = entry.getValue().metricValue();
+        return value instanceof Number number ? number.doubleValue() : Double.NaN;
+      }
+    }
+    return Double.NaN;
+  }
+
+  /**
+   * Report the send-to-ack latency in nanoseconds of every record acknowledged through
+   * {@link #sendBatch} or {@link #sendAll}. The listener is called on the producer's I/O thread
+   * before the record's future completes.
+   */
+  public void setAckLatencyListener(LongConsumer listener) {
+    this.ackLatencyListener = listener;
+  }
+
+  /**
+   * Get the configured batch.size in bytes
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
   /**
    * Send CloudEvent with manual retry
    */
@@ -73,6 +202,13 @@ public class EventProducer implements AutoCloseable {
     }
   }
 
+  /**
+   * Message key for an event: the customer ID as a String or a native long
+   */
+  private Object keyFor(CloudEvent event) {
+    return keyMode.isLong() ? CloudEventUtil.customerId(event) : event.getSubject();
+  }
+
   /**
    * Check if this producer is using idempotent configuration
    */
@@ -80,10 +216,22 @@ public class EventProducer implements AutoCloseable {
     return idempotent;
   }
 
+  /**
+   * Check if the underlying KafkaProducer is shared with other users of the same configuration
+   */
+  public boolean isShared() {
+    return shared;
+  }
+
   @Override
   public void close() {
-    if (producer != null) {
-      producer.close();
+    if (producer == null) {
+      return;
+    }
+    if (shared) {
+      KafkaClientRegistry.releaseProducer(producer);
+    } else {
+      producer.close(CLOSE_TIMEOUT);
     }
   }
 }
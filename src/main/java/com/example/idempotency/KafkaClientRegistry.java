@@ -0,0 +1,96 @@
+package com.example.idempotency;
+
+import lombok.experimental.UtilityClass;
+import org.apache.kafka.clients.producer.KafkaProducer;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Shares KafkaProducer instances, which are thread-safe, between users in the same JVM.
+ *
+ * Producers are keyed by their configuration and reference-counted. Idle producers stay open so
+ * the next user skips the connection handshake and metadata bootstrap; they are closed by
+ * {@link #closeIdle()}, {@link #closeAll()} or at JVM shutdown.
+ */
+@UtilityClass
+public class KafkaClientRegistry {
+  private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(5);
+  private static final Map<Map<Object, Object>, SharedProducer> producers = new HashMap<>();
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(KafkaClientRegistry::closeAll, "kafka-client-registry"));
+  }
+
+  /**
+   * Get the shared producer for a configuration, creating it on first use
+   */
+  @SuppressWarnings("unchecked")
+  public static synchronized <K, V> KafkaProducer<K, V> acquireProducer(Properties props) {
+    Map<Object, Object> config = new HashMap<>(props);
+
+    SharedProducer shared = producers.get(config);
+    if (shared == null) {
+      shared = new SharedProducer(new KafkaProducer<>(props));
+      producers.put(config, shared);
+    }
+
+    shared.references++;
+    return (KafkaProducer<K, V>) shared.producer;
+  }
+
+  /**
+   * Release a producer obtained from {@link #acquireProducer}; it stays open for reuse
+   */
+  public static synchronized void releaseProducer(KafkaProducer<?, ?> producer) {
+    for (SharedProducer shared : producers.values()) {
+      if (shared.producer == producer) {
+        shared.references = Math.max(0, shared.references - 1);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Close producers that are no longer in use
+   */
+  public static synchronized void closeIdle() {
+    Iterator<SharedProducer> iterator = producers.values().iterator();
+    while (iterator.hasNext()) {
+      SharedProducer shared = iterator.next();
+      if (shared.references == 0) {
+        shared.producer.close(CLOSE_TIMEOUT);
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Close every producer, in use or not
+   */
+  public static synchronized void closeAll() {
+    for (SharedProducer shared : producers.values()) {
+      shared.producer.close(CLOSE_TIMEOUT);
+    }
+    producers.clear();
+  }
+
+  /**
+   * Get the number of open producers
+   */
+  public static synchronized int getProducerCount() {
+    return producers.size();
+  }
+
+  private static class SharedProducer {
+    private final KafkaProducer<?, ?> producer;
+    private int references = 0;
+
+    SharedProducer(KafkaProducer<?, ?> producer) {
+      this.producer = producer;
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package com.example.idempotency;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of primitive longs, used to track customer ids without boxing
+ */
+public class LongHashSet {
+  private static final int DEFAULT_CAPACITY = 64;
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private long[] slots;
+  private boolean hasZero;
+  private int size;
+  private int resizeAt;
+
+  public LongHashSet() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public LongHashSet(int expectedSize) {
+    allocate(tableSizeFor(expectedSize));
+  }
+
+  /**
+   * Add a value, returning false if it was already present
+   */
+  public boolean add(long value) {
+    if (value == 0) {
+      if (hasZero) {
+        return false;
+      }
+      hasZero = true;
+      size++;
+      return true;
+    }
+
+    int mask = slots.length - 1;
+    int i = LongHashing.mix(value) & mask;
+    while (slots[i] != 0) {
+      if (slots[i] == value) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+
+    slots[i] = value;
+    if (++size >= resizeAt) {
+      rehash(slots.length << 1);
+    }
+    return true;
+  }
+
+  /**
+   * Check whether a value is present
+   */
+  public boolean contains(long value) {
+    if (value == 0) {
+      return hasZero;
+    }
+
+    int mask = slots.length - 1;
+    int i = LongHashing.mix(value) & mask;
+    while (slots[i] != 0) {
+      if (slots[i] == value) {
+        return true;
+      }
+      i = (i + 1) & mask;
+    }
+    return false;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    Arrays.fill(slots, 0);
+    hasZero = false;
+    size = 0;
+  }
+
+  private void rehash(int capacity) {
+    long[] old = slots;
+    allocate(capacity);
+
+    int mask = slots.length - 1;
+    for (long value : old) {
+      if (value != 0) {
+        int i = LongHashing.mix(value) & mask;
+        while (slots[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        slots[i] = value;
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    slots = new long[capacity];
+    resizeAt = (int) (capacity * LOAD_FACTOR);
+  }
+
+  private static int tableSizeFor(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+    return Math.max(capacity, DEFAULT_CAPACITY);
+  }
+}
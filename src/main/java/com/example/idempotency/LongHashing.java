@@ -0,0 +1,22 @@
+package com.example.idempotency;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Hashing shared by the primitive long collections
+ */
+@UtilityClass
+class LongHashing {
+
+  /**
+   * Spread the bits of sequential TSIDs across a power-of-two table (MurmurHash3 finalizer)
+   */
+  static int mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    value *= 0xc4ceb9fe1a85ec53L;
+    value ^= value >>> 33;
+    return (int) value;
+  }
+}
@@ -107,6 +107,9 @@ public class MultiEventDemo {
       System.out.println("Events With Retries: " + retriedEvents);
       System.out.println("Total Send Attempts: " + totalSendAttempts);
 
+      System.out.println("\n=== ID ALLOCATION ===");
+      CustomerDataProvider.getIdAllocator().printStats();
+
       System.out.println("\n=== CONSUMER METRICS ===");
       System.out.println("Messages Received: " + consumer.getTotalReceived());
       System.out.println("Unique Messages: " + consumer.getUniqueCount());
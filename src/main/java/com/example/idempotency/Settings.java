@@ -0,0 +1,18 @@
+package com.example.idempotency;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Reads settings given as a system property or an environment variable
+ */
+@UtilityClass
+class Settings {
+
+  /**
+   * Get a setting from the system property, falling back to the environment variable; null if neither is set
+   */
+  static String get(String property, String environment) {
+    String value = System.getProperty(property);
+    return value != null ? value : System.getenv(environment);
+  }
+}
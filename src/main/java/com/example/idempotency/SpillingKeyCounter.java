@@ -0,0 +1,327 @@
+package com.example.idempotency;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Counts occurrences of long keys per event type within a fixed memory budget.
+ *
+ * Keys are buffered in memory until the budget is reached, then each type's buffer is sorted and
+ * spilled to disk as a run. {@link #merge} streams the runs of several counters back in key order,
+ * so exact per-key counts are available for inputs far larger than the heap. The number of runs
+ * open at once is capped; beyond that, runs are first merged into larger ones in extra passes.
+ */
+class SpillingKeyCounter implements AutoCloseable {
+  static final int MAX_TYPES = 16;
+  static final int IO_BUFFER_SIZE = 64 * 1024;
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int MIXED = -1;
+
+  private final int maxBuffered;
+  private final int initialCapacity;
+  private final Path spillDir;
+  private final long[][] buffers = new long[MAX_TYPES][];
+  private final int[] sizes = new int[MAX_TYPES];
+  private final List<Run> runs = new ArrayList<>();
+  private long allocated = 0;
+
+  /**
+   * Visitor receiving each distinct key with its occurrence counts; sources are
+   * {@code counterIndex * MAX_TYPES + type}, ascending, and only those with occurrences are passed
+   */
+  interface KeyGroupVisitor {
+    void visit(long key, int[] sources, long[] counts, int size);
+  }
+
+  /**
+   * @param maxBuffered keys held in memory across all types; buffers never grow beyond this
+   * @param spillDir    directory for run files
+   */
+  SpillingKeyCounter(int maxBuffered, Path spillDir) {
+    this.maxBuffered = maxBuffered;
+    // Every type's first buffer fits in the budget, so new types don't force a spill
+    this.initialCapacity = Math.max(1, Math.min(INITIAL_CAPACITY, maxBuffered / MAX_TYPES));
+    this.spillDir = spillDir;
+  }
+
+  /**
+   * Record one occurrence of a key for the given type
+   */
+  void add(long key, int type) {
+    long[] buffer = buffers[type];
+    if (buffer == null || sizes[type] == buffer.length) {
+      buffer = grow(type);
+    }
+    buffer[sizes[type]++] = key;
+  }
+
+  /**
+   * Spill the remaining keys and release the in-memory buffers; call once counting is done
+   */
+  void finish() {
+    spill();
+    Arrays.fill(buffers, null);
+    allocated = 0;
+  }
+
+  /**
+   * Number of runs spilled to disk so far
+   */
+  int getSpillCount() {
+    return runs.size();
+  }
+
+  /**
+   * Stream every distinct key across the finished counters in ascending order, with its
+   * occurrence counts per counter and type, opening at most maxFanIn runs at a time
+   */
+  static void merge(List<SpillingKeyCounter> counters, int maxFanIn, Path spillDir, KeyGroupVisitor visitor)
+      throws IOException {
+    if (maxFanIn < 2) {
+      throw new IllegalArgumentException("maxFanIn must be at least 2");
+    }
+
+    List<Run> pending = new ArrayList<>();
+    for (int index = 0; index < counters.size(); index++) {
+      for (Run run : counters.get(index).runs) {
+        pending.add(new Run(run.file(), index * MAX_TYPES + run.source(), run.entries()));
+      }
+    }
+
+    Accumulator accumulator = new Accumulator(counters.size() * MAX_TYPES);
+    List<Path> intermediate = new ArrayList<>();
+    try {
+      // Merge the smallest runs first so each pass rewrites as little data as possible
+      while (pending.size() > maxFanIn) {
+        pending.sort(Comparator.comparingLong(Run::entries));
+        List<Run> group = new ArrayList<>(pending.subList(0, maxFanIn));
+        pending.subList(0, maxFanIn).clear();
+
+        Run merged = mergeToRun(group, accumulator, spillDir);
+        intermediate.add(merged.file());
+        pending.add(merged);
+      }
+
+      mergeRuns(pending, accumulator, visitor);
+    } finally {
+      for (Path file : intermediate) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  /**
+   * Merge runs into one mixed run of (key, source, count) entries
+   */
+  private static Run mergeToRun(List<Run> group, Accumulator accumulator, Path spillDir) throws IOException {
+    Path file = Files.createTempFile(spillDir, "audit-", ".merged");
+    long[] entries = {0};
+
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(file), IO_BUFFER_SIZE))) {
+      mergeRuns(group, accumulator, (key, sources, counts, size) -> {
+        try {
+          for (int i = 0; i < size; i++) {
+            out.writeLong(key);
+            out.writeInt(sources[i]);
+            out.writeLong(counts[i]);
+          }
+          entries[0] += size;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (IOException | UncheckedIOException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+
+    return new Run(file, MIXED, entries[0]);
+  }
+
+  private static void mergeRuns(List<Run> group, Accumulator accumulator, KeyGroupVisitor visitor)
+      throws IOException {
+    PriorityQueue<Cursor> queue = new PriorityQueue<>(Comparator.comparingLong(c -> c.current));
+
+    try {
+      for (Run run : group) {
+        Cursor cursor = new Cursor(run);
+        if (cursor.advance()) {
+          queue.add(cursor);
+        } else {
+          cursor.close();
+        }
+      }
+
+      while (!queue.isEmpty()) {
+        long key = queue.peek().current;
+
+        while (!queue.isEmpty() && queue.peek().current == key) {
+          Cursor cursor = queue.poll();
+          accumulator.add(cursor.source, cursor.count);
+          if (cursor.advance()) {
+            queue.add(cursor);
+          } else {
+            cursor.close();
+          }
+        }
+
+        accumulator.emit(key, visitor);
+      }
+    } finally {
+      for (Cursor cursor : queue) {
+        cursor.close();
+      }
+    }
+  }
+
+  /**
+   * Double a type's buffer, spilling everything first if that would exceed the budget
+   */
+  private long[] grow(int type) {
+    long[] buffer = buffers[type];
+    int extra = buffer == null ? initialCapacity : buffer.length;
+
+    if (allocated + extra > maxBuffered) {
+      spill();
+      if (buffer != null) {
+        return buffer; // emptied by the spill
+      }
+      Arrays.fill(buffers, null);
+      allocated = 0;
+    }
+
+    buffers[type] = buffer == null ? new long[extra] : Arrays.copyOf(buffer, buffer.length + extra);
+    allocated += extra;
+    return buffers[type];
+  }
+
+  /**
+   * Sort each type's buffer and write it to disk as a run
+   */
+  private void spill() {
+    try {
+      for (int type = 0; type < MAX_TYPES; type++) {
+        int size = sizes[type];
+        if (size == 0) {
+          continue;
+        }
+
+        long[] buffer = buffers[type];
+        Arrays.sort(buffer, 0, size);
+
+        Path file = Files.createTempFile(spillDir, "audit-", ".run");
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(file), IO_BUFFER_SIZE))) {
+          for (int i = 0; i < size; i++) {
+            out.writeLong(buffer[i]);
+          }
+        }
+
+        runs.add(new Run(file, type, size));
+        sizes[type] = 0;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error spilling keys to " + spillDir, e);
+    }
+  }
+
+  @Override
+  public void close() {
+    for (Run run : runs) {
+      try {
+        Files.deleteIfExists(run.file());
+      } catch (IOException e) {
+        System.err.println("Error deleting spill file " + run.file() + ": " + e.getMessage());
+      }
+    }
+    runs.clear();
+  }
+
+  /**
+   * A sorted run file: plain keys of a single source, or (key, source, count) entries when MIXED
+   */
+  private record Run(Path file, int source, long entries) {
+  }
+
+  /**
+   * Sums the counts of one key per source
+   */
+  private static class Accumulator {
+    private final long[] countsBySource;
+    private final int[] sources;
+    private final long[] counts;
+    private int size = 0;
+
+    Accumulator(int sourceCount) {
+      this.countsBySource = new long[sourceCount];
+      this.sources = new int[sourceCount];
+      this.counts = new long[sourceCount];
+    }
+
+    void add(int source, long count) {
+      if (countsBySource[source] == 0) {
+        sources[size++] = source;
+      }
+      countsBySource[source] += count;
+    }
+
+    void emit(long key, KeyGroupVisitor visitor) {
+      Arrays.sort(sources, 0, size);
+      for (int i = 0; i < size; i++) {
+        counts[i] = countsBySource[sources[i]];
+        countsBySource[sources[i]] = 0;
+      }
+      visitor.visit(key, sources, counts, size);
+      size = 0;
+    }
+  }
+
+  /**
+   * Reads a run in key order
+   */
+  private static class Cursor {
+    private final DataInputStream in;
+    private final boolean mixed;
+    private long remaining;
+    long current;
+    int source;
+    long count;
+
+    Cursor(Run run) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.file()), IO_BUFFER_SIZE));
+      this.mixed = run.source() == MIXED;
+      this.remaining = run.entries();
+      this.source = run.source();
+      this.count = 1;
+    }
+
+    boolean advance() throws IOException {
+      if (remaining == 0) {
+        return false;
+      }
+      current = in.readLong();
+      if (mixed) {
+        source = in.readInt();
+        count = in.readLong();
+      }
+      remaining--;
+      return true;
+    }
+
+    void close() throws IOException {
+      in.close();
+    }
+  }
+}
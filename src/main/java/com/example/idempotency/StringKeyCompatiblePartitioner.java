@@ -0,0 +1,74 @@
+package com.example.idempotency;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Partitioner for native long keys that assigns each key to the same partition the default
+ * partitioner would have chosen for its decimal String form, so existing string-keyed data
+ * keeps its per-customer ordering when producers switch to long keys.
+ */
+public class StringKeyCompatiblePartitioner implements Partitioner {
+
+  @Override
+  public int partition(String topic, Object key, byte[] keyBytes,
+                       Object value, byte[] valueBytes, Cluster cluster) {
+    int numPartitions = cluster.partitionCountForTopic(topic);
+
+    if (key instanceof Long id) {
+      return partitionFor(id, numPartitions);
+    }
+    if (keyBytes == null) {
+      return ThreadLocalRandom.current().nextInt(numPartitions);
+    }
+    return Utils.toPositive(Utils.murmur2(keyBytes)) % numPartitions;
+  }
+
+  /**
+   * Partition the default partitioner picks for the String key {@code Long.toString(id)}
+   */
+  public static int partitionFor(long id, int numPartitions) {
+    return Utils.toPositive(Utils.murmur2(decimalBytes(id))) % numPartitions;
+  }
+
+  /**
+   * UTF-8 bytes of {@code Long.toString(value)}, written directly without an intermediate String
+   */
+  static byte[] decimalBytes(long value) {
+    if (value == Long.MIN_VALUE) {
+      return Long.toString(value).getBytes();
+    }
+
+    boolean negative = value < 0;
+    long remaining = negative ? -value : value;
+
+    int length = negative ? 2 : 1;
+    for (long v = remaining; v >= 10; v /= 10) {
+      length++;
+    }
+
+    byte[] bytes = new byte[length];
+    int i = length;
+    do {
+      bytes[--i] = (byte) ('0' + remaining % 10);
+      remaining /= 10;
+    } while (remaining != 0);
+
+    if (negative) {
+      bytes[0] = '-';
+    }
+    return bytes;
+  }
+
+  @Override
+  public void configure(Map<String, ?> configs) {
+  }
+
+  @Override
+  public void close() {
+  }
+}
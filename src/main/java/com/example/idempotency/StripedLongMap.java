@@ -0,0 +1,223 @@
+package com.example.idempotency;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Concurrent map from primitive long keys to values, used to index customers by id without boxing.
+ *
+ * Keys are spread over stripes, each an open-addressing table guarded by a StampedLock. Reads are
+ * optimistic and take no lock unless they race with a write to the same stripe.
+ */
+public class StripedLongMap<V> {
+  private static final int STRIPE_COUNT = 16;
+  private static final int INITIAL_CAPACITY = 64;
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+  public StripedLongMap() {
+    for (int i = 0; i < STRIPE_COUNT; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * Get the value for a key, or null if absent
+   */
+  @SuppressWarnings("unchecked")
+  public V get(long key) {
+    int hash = LongHashing.mix(key);
+    Stripe stripe = stripeFor(hash);
+
+    long stamp = stripe.lock.tryOptimisticRead();
+    Object value = stripe.find(key, hash);
+    if (!stripe.lock.validate(stamp)) {
+      stamp = stripe.lock.readLock();
+      try {
+        value = stripe.find(key, hash);
+      } finally {
+        stripe.lock.unlockRead(stamp);
+      }
+    }
+    return (V) value;
+  }
+
+  /**
+   * Associate a non-null value with a key, replacing any previous value
+   */
+  public void put(long key, V value) {
+    if (value == null) {
+      throw new IllegalArgumentException("Value cannot be null");
+    }
+
+    int hash = LongHashing.mix(key);
+    Stripe stripe = stripeFor(hash);
+    long stamp = stripe.lock.writeLock();
+    try {
+      stripe.put(key, hash, value);
+    } finally {
+      stripe.lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Remove the value for a key, if present
+   */
+  public void remove(long key) {
+    int hash = LongHashing.mix(key);
+    Stripe stripe = stripeFor(hash);
+    long stamp = stripe.lock.writeLock();
+    try {
+      stripe.remove(key, hash);
+    } finally {
+      stripe.lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Get the number of entries; not a consistent snapshot while writes continue
+   */
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      long stamp = stripe.lock.readLock();
+      try {
+        size += stripe.size;
+      } finally {
+        stripe.lock.unlockRead(stamp);
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Visit every value, one stripe at a time; writes to other stripes may proceed meanwhile
+   */
+  @SuppressWarnings("unchecked")
+  public void forEachValue(Consumer<? super V> action) {
+    for (Stripe stripe : stripes) {
+      long stamp = stripe.lock.readLock();
+      try {
+        for (Object value : stripe.values) {
+          if (value != null) {
+            action.accept((V) value);
+          }
+        }
+      } finally {
+        stripe.lock.unlockRead(stamp);
+      }
+    }
+  }
+
+  private Stripe stripeFor(int hash) {
+    // High bits pick the stripe, low bits the slot within it
+    return stripes[hash >>> 28];
+  }
+
+  /**
+   * One open-addressing table; a slot is empty when its value is null, so key 0 needs no special case
+   */
+  private static class Stripe {
+    private final StampedLock lock = new StampedLock();
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Probe for a key; also called optimistically, so it must terminate on a table being modified
+     */
+    Object find(long key, int hash) {
+      long[] keys = this.keys;
+      Object[] values = this.values;
+      int capacity = Math.min(keys.length, values.length);
+      int mask = capacity - 1;
+
+      int i = hash & mask;
+      for (int probes = 0; probes < capacity; probes++) {
+        Object value = values[i];
+        if (value == null) {
+          return null;
+        }
+        if (keys[i] == key) {
+          return value;
+        }
+        i = (i + 1) & mask;
+      }
+      return null;
+    }
+
+    void put(long key, int hash, Object value) {
+      int mask = keys.length - 1;
+      int i = hash & mask;
+      while (values[i] != null) {
+        if (keys[i] == key) {
+          values[i] = value;
+          return;
+        }
+        i = (i + 1) & mask;
+      }
+
+      keys[i] = key;
+      values[i] = value;
+      if (++size >= keys.length * LOAD_FACTOR) {
+        rehash(keys.length << 1);
+      }
+    }
+
+    void remove(long key, int hash) {
+      int mask = keys.length - 1;
+      int i = hash & mask;
+      while (values[i] != null) {
+        if (keys[i] == key) {
+          deleteAt(i);
+          size--;
+          return;
+        }
+        i = (i + 1) & mask;
+      }
+    }
+
+    /**
+     * Backward-shift deletion: move later entries of the probe chain into the gap so lookups
+     * never stop early at the removed slot
+     */
+    private void deleteAt(int gap) {
+      int mask = keys.length - 1;
+      int i = (gap + 1) & mask;
+      while (values[i] != null) {
+        int home = LongHashing.mix(keys[i]) & mask;
+        // Move the entry if its home slot is not between the gap and its current slot
+        if (((i - home) & mask) >= ((i - gap) & mask)) {
+          keys[gap] = keys[i];
+          values[gap] = values[i];
+          gap = i;
+        }
+        i = (i + 1) & mask;
+      }
+      values[gap] = null;
+    }
+
+    private void rehash(int capacity) {
+      long[] oldKeys = keys;
+      Object[] oldValues = values;
+      long[] newKeys = new long[capacity];
+      Object[] newValues = new Object[capacity];
+
+      int mask = capacity - 1;
+      for (int j = 0; j < oldKeys.length; j++) {
+        if (oldValues[j] != null) {
+          int i = LongHashing.mix(oldKeys[j]) & mask;
+          while (newValues[i] != null) {
+            i = (i + 1) & mask;
+          }
+          newKeys[i] = oldKeys[j];
+          newValues[i] = oldValues[j];
+        }
+      }
+
+      keys = newKeys;
+      values = newValues;
+    }
+  }
+}
@@ -0,0 +1,256 @@
+package com.example.idempotency;
+
+import io.hypersistence.tsid.TSID;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Node-aware TSID allocator for multi-threaded, multi-instance producers.
+ *
+ * IDs use the TSID layout: 42 bits of milliseconds since the TSID epoch followed by 22 bits that
+ * are split into the instance node id, a stripe index and a per-millisecond counter. Each thread
+ * is pinned to a stripe with its own clock and counter, so threads don't contend on a shared
+ * generator, and instances configured with distinct node ids can never produce the same ID.
+ * Without a configured node count the allocator runs in single-instance mode and reserves no
+ * node bits; deployments with several producer instances must configure both settings.
+ */
+public class TsidAllocator {
+  private static final int RANDOM_BITS = 22;
+  private static final int DEFAULT_NODE_BITS = 8;
+  private static final int MIN_COUNTER_BITS = 8;
+
+  private final int node;
+  private final int nodeBits;
+  private final int stripeBits;
+  private final int counterMask;
+  private final Stripe[] stripes;
+  private final AtomicInteger nextStripe = new AtomicInteger();
+  private final ThreadLocal<Stripe> threadStripe;
+
+  private final LongAdder generated = new LongAdder();
+  private final long createdNanos = System.nanoTime();
+
+  // Start of the current rate reporting interval, guarded by rateLock
+  private final Object rateLock = new Object();
+  private long intervalStartNanos = createdNanos;
+  private long intervalStartCount = 0;
+
+  /**
+   * Create an allocator for the given node
+   *
+   * @param node       this instance's node id, unique among instances producing to the same topic
+   * @param nodeBits   bits reserved for the node id
+   * @param stripeBits bits reserved for the stripe index (2^stripeBits stripes)
+   */
+  public TsidAllocator(int node, int nodeBits, int stripeBits) {
+    int counterBits = RANDOM_BITS - nodeBits - stripeBits;
+    if (nodeBits < 0 || stripeBits < 0 || counterBits < MIN_COUNTER_BITS) {
+      throw new IllegalArgumentException(
+          "nodeBits + stripeBits must leave at least " + MIN_COUNTER_BITS + " of " + RANDOM_BITS + " bits for the counter");
+    }
+    if (node < 0 || node >= (1 << nodeBits)) {
+      throw new IllegalArgumentException("Node id " + node + " does not fit in " + nodeBits + " bits");
+    }
+
+    this.node = node;
+    this.nodeBits = nodeBits;
+    this.stripeBits = stripeBits;
+    this.counterMask = (1 << counterBits) - 1;
+
+    this.stripes = new Stripe[1 << stripeBits];
+    for (int i = 0; i < stripes.length; i++) {
+      long nodeAndStripe = (((long) node << stripeBits) | i) << counterBits;
+      stripes[i] = new Stripe(nodeAndStripe);
+    }
+    this.threadStripe = ThreadLocal.withInitial(
+        () -> stripes[nextStripe.getAndIncrement() & (stripes.length - 1)]);
+  }
+
+  /**
+   * Create an allocator configured like the TSID library: node id from the {@code tsid.node}
+   * system property or {@code TSID_NODE} environment variable, node count from
+   * {@code tsid.node.count} / {@code TSID_NODE_COUNT}. One stripe per available processor.
+   *
+   * A node count declares a multi-instance deployment, which then requires a node id. With
+   * neither setting the allocator is single-instance. A node id is never picked at random,
+   * since two instances would then collide one time in 2^nodeBits.
+   *
+   * @throws IllegalStateException if a node count is set without a valid node id
+   */
+  public static TsidAllocator fromEnvironment() {
+    String nodeCountSetting = Settings.get("tsid.node.count", "TSID_NODE_COUNT");
+    String nodeSetting = Settings.get("tsid.node", "TSID_NODE");
+
+    int node = 0;
+    int nodeBits = 0;
+    if (nodeCountSetting != null) {
+      int nodeCount = Integer.parseInt(nodeCountSetting);
+      if (nodeSetting == null) {
+        throw new IllegalStateException("tsid.node.count/TSID_NODE_COUNT is " + nodeCount
+                                            + " but tsid.node/TSID_NODE is not set; give every producer instance a unique node id");
+      }
+      node = Integer.parseInt(nodeSetting);
+      if (node < 0 || node >= nodeCount) {
+        throw new IllegalStateException("tsid.node/TSID_NODE must be between 0 and " + (nodeCount - 1) + ", was " + node);
+      }
+      nodeBits = bitsFor(nodeCount);
+    } else if (nodeSetting != null) {
+      node = Integer.parseInt(nodeSetting);
+      nodeBits = DEFAULT_NODE_BITS;
+    } else {
+      System.out.println("TSID allocator in single-instance mode; set tsid.node and tsid.node.count"
+                             + " on every instance when several produce to the same topic");
+    }
+
+    int stripeBits = Math.min(bitsFor(Runtime.getRuntime().availableProcessors()),
+                              RANDOM_BITS - nodeBits - MIN_COUNTER_BITS);
+    return new TsidAllocator(node, nodeBits, Math.max(0, stripeBits));
+  }
+
+  /**
+   * Allocate a single ID
+   */
+  public long nextId() {
+    long id = threadStripe.get().next();
+    generated.increment();
+    return id;
+  }
+
+  /**
+   * Pre-allocate a block of IDs with a single reservation on the calling thread's stripe
+   */
+  public long[] allocate(int count) {
+    long[] ids = new long[count];
+    threadStripe.get().fill(ids);
+    generated.add(count);
+    return ids;
+  }
+
+  /**
+   * Get the node id of this instance
+   */
+  public int getNode() {
+    return node;
+  }
+
+  /**
+   * Get the number of stripes threads are spread over
+   */
+  public int getStripeCount() {
+    return stripes.length;
+  }
+
+  /**
+   * Get the total number of IDs allocated
+   */
+  public long getGeneratedCount() {
+    return generated.sum();
+  }
+
+  /**
+   * Get the generation rate in IDs per second since the previous call, or since creation on the
+   * first call; call it at a fixed interval to track the current rate
+   */
+  public double getGenerationRate() {
+    synchronized (rateLock) {
+      long now = System.nanoTime();
+      long count = generated.sum();
+      double rate = rate(count - intervalStartCount, now - intervalStartNanos);
+      intervalStartNanos = now;
+      intervalStartCount = count;
+      return rate;
+    }
+  }
+
+  /**
+   * Get the average generation rate in IDs per second since the allocator was created
+   */
+  public double getAverageGenerationRate() {
+    return rate(generated.sum(), System.nanoTime() - createdNanos);
+  }
+
+  /**
+   * Print allocator configuration and generation rates; the current rate covers the time since
+   * the previous report
+   */
+  public void printStats() {
+    System.out.println("TSID Allocator:");
+    System.out.println("  node: " + node + " (" + nodeBits + " bits)");
+    System.out.println("  stripes: " + stripes.length + " (" + stripeBits + " bits)");
+    System.out.println("  ids per ms per stripe: " + (counterMask + 1));
+    System.out.println("  generated: " + getGeneratedCount());
+    System.out.printf("  current rate: %.0f ids/s%n", getGenerationRate());
+    System.out.printf("  average rate: %.0f ids/s%n", getAverageGenerationRate());
+  }
+
+  private static double rate(long count, long elapsedNanos) {
+    return elapsedNanos > 0 ? count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+  }
+
+  private static int bitsFor(int count) {
+    return count <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(count - 1);
+  }
+
+  /**
+   * Clock and counter for the threads pinned to one node/stripe combination
+   */
+  private final class Stripe {
+    private final long nodeAndStripe;
+    private long lastTime;
+    private int counter;
+
+    Stripe(long nodeAndStripe) {
+      this.nodeAndStripe = nodeAndStripe;
+    }
+
+    synchronized long next() {
+      advanceClock();
+      return take();
+    }
+
+    synchronized void fill(long[] ids) {
+      advanceClock();
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = take();
+      }
+    }
+
+    /**
+     * Move to the current millisecond; a clock that steps back keeps the last time so IDs stay monotonic
+     */
+    private void advanceClock() {
+      long time = currentTime();
+      if (time > lastTime) {
+        lastTime = time;
+        counter = 0;
+      }
+    }
+
+    /**
+     * Take the next counter value, moving to the next millisecond once this one is exhausted
+     */
+    private long take() {
+      if (counter > counterMask) {
+        long time = currentTime();
+        if (time == lastTime) {
+          // Wait rather than borrow future time, so IDs never run ahead of the clock
+          while ((time = currentTime()) <= lastTime) {
+            Thread.onSpinWait();
+          }
+          lastTime = time;
+        } else {
+          // Clock already moved on, or stepped back and the next millisecond is borrowed to stay monotonic
+          lastTime = Math.max(lastTime + 1, time);
+        }
+        counter = 0;
+      }
+      return (lastTime << RANDOM_BITS) | nodeAndStripe | counter++;
+    }
+
+    private long currentTime() {
+      return System.currentTimeMillis() - TSID.TSID_EPOCH;
+    }
+  }
+}